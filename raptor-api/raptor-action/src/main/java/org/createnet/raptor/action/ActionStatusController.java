@@ -19,7 +19,7 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import org.createnet.raptor.common.client.ApiClientService;
+import org.createnet.raptor.common.cache.DeviceCache;
 import org.createnet.raptor.models.auth.User;
 import org.createnet.raptor.models.data.ActionStatus;
 import org.createnet.raptor.models.objects.Action;
@@ -58,7 +58,7 @@ public class ActionStatusController {
     private ActionStatusEventPublisher actionStatusPublisher;
 
     @Autowired
-    private ApiClientService raptor;
+    private DeviceCache deviceCache;
 
     @RequestMapping(
             method = RequestMethod.POST,
@@ -80,7 +80,7 @@ public class ActionStatusController {
             @RequestBody String status
     ) {
 
-        Device device = raptor.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Action action = device.action(actionId);
         if (action == null) {
@@ -126,7 +126,7 @@ public class ActionStatusController {
             @RequestBody String status
     ) {
 
-        Device device = raptor.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Action action = device.action(actionId);
         if (action == null) {
@@ -162,7 +162,7 @@ public class ActionStatusController {
             @PathVariable("actionId") String actionId
     ) {
 
-        Device device = raptor.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Action action = device.action(actionId);
         if (action == null) {
@@ -194,7 +194,7 @@ public class ActionStatusController {
             @PathVariable("actionId") String actionId
     ) {
 
-        Device device = raptor.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Action action = device.action(actionId);
         if (action == null) {
@@ -226,7 +226,7 @@ public class ActionStatusController {
             @PathVariable("actionId") String actionId
     ) {
 
-        Device device = raptor.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Action action = device.action(actionId);
         if (action == null) {
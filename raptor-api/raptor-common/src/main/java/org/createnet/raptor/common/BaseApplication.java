@@ -22,8 +22,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
-import org.createnet.raptor.common.dispatcher.RaptorMessageHandlerWrapper;
+import org.createnet.raptor.common.configuration.MqttConfiguration;
+import org.createnet.raptor.common.dispatcher.MessageHandlerRegistry;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
 import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.sdk.Topics;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -31,8 +34,6 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.context.annotation.Profile;
 import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
-import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
-import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -229,8 +230,8 @@ public abstract class BaseApplication {
     }
 
     @Bean
-    protected RaptorMessageHandlerWrapper raptorMessageHandlerWrapper() {
-        return new RaptorMessageHandlerWrapper();
+    protected MessageHandlerRegistry messageHandlerRegistry() {
+        return new MessageHandlerRegistry(raptorConfiguration().getDispatcher().getConsumer());
     }
 
     @Autowired
@@ -239,21 +240,21 @@ public abstract class BaseApplication {
     MessageChannel mqttInputChannel;
 
     /**
-     * Create a MQTT connection to the broker
+     * Create a MQTT connection to the broker. If `dispatcher.consumer.sharedGroup`
+     * is set the topics are subscribed in the `{sharedGroup}-{service}` group
      *
      * @param messageHandler
      * @param topics
      * @return
      */
     public MessageProducer createMqttClient(String[] topics) {
-        MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter("raptor" + (System.currentTimeMillis() + Math.random()), mqttClientFactory, topics);
-        adapter.setCompletionTimeout(5000);
-        adapter.setConverter(new DefaultPahoMessageConverter());
-        adapter.setQos(2);
-        adapter.setRecoveryInterval(2500);
-        adapter.setOutputChannel(mqttInputChannel);
-
-        return adapter;
+
+        DispatcherConfiguration.ConsumerConfiguration consumer = raptorConfiguration().getDispatcher().getConsumer();
+        // each service has its own group, replicas of a service split the messages
+        String group = consumer.getSharedGroup().isEmpty() ? null : consumer.getSharedGroup() + "-" + appName;
+        String[] subscriptions = Arrays.stream(topics).map((t) -> Topics.shared(group, t)).toArray(String[]::new);
+
+        return MqttConfiguration.inboundAdapter(mqttClientFactory, mqttInputChannel, consumer.getQos(), subscriptions);
     }
 
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.authentication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.createnet.raptor.common.cache.ExpiringCache;
+import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
+import org.createnet.raptor.common.dispatcher.events.DeviceApplicationEvent;
+import org.createnet.raptor.common.dispatcher.events.listener.SynchronousApplicationListener;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.configuration.AuthConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.payload.DevicePayload;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.UserPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per node cache of the authorization decisions of the auth API. Both granted
+ * and denied requests are cached, the latter with a shorter time to live.
+ *
+ * Decisions are dropped on user, token and app events and when a device is
+ * updated or deleted.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class AuthorizationCache implements RaptorMessageHandler, PublicMetrics, SynchronousApplicationListener<DeviceApplicationEvent> {
+
+    final private Logger log = LoggerFactory.getLogger(AuthorizationCache.class);
+
+    /**
+     * The request to authorize
+     */
+    static public class Decision {
+
+        final String userId;
+        final EntityType entity;
+        final Operation operation;
+        final String objectId;
+        final String domain;
+
+        public Decision(String userId, EntityType entity, Operation operation, String objectId, String domain) {
+            this.userId = userId;
+            this.entity = entity;
+            this.operation = operation;
+            this.objectId = objectId;
+            this.domain = domain;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Decision)) {
+                return false;
+            }
+            Decision d = (Decision) obj;
+            return entity == d.entity && operation == d.operation
+                    && Objects.equals(userId, d.userId)
+                    && Objects.equals(objectId, d.objectId)
+                    && Objects.equals(domain, d.domain);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, entity, operation, objectId, domain);
+        }
+
+        @Override
+        public String toString() {
+            return userId + " " + operation + " " + entity + (objectId == null ? "" : " " + objectId) + (domain == null ? "" : " @" + domain);
+        }
+
+    }
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    private AuthConfiguration.AuthorizationCacheSettings settings;
+    private ExpiringCache<Decision, Boolean> cache;
+
+    final private LongAdder mismatches = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        settings = config.getAuth().getAuthorizationCache();
+        cache = new ExpiringCache(settings.getMaxSize(), settings.getTtl() * 1000L);
+    }
+
+    /**
+     * Return the cached decision or ask for it. In shadow mode the decision is
+     * always requested and compared with the cached one.
+     *
+     * @param decision
+     * @param authorize request the live decision
+     * @return
+     */
+    public boolean authorize(Decision decision, Supplier<Boolean> authorize) {
+
+        if (!settings.isEnabled()) {
+            return authorize.get();
+        }
+
+        Boolean cached = cache.get(decision);
+        if (cached != null && !settings.isShadow()) {
+            return cached;
+        }
+
+        boolean result = authorize.get();
+
+        if (cached != null && cached != result) {
+            mismatches.increment();
+            log.warn("Cached authorization mismatch for `{}`: cached={} live={}", decision, cached, result);
+        }
+
+        cache.put(decision, result, (result ? settings.getTtl() : settings.getNegativeTtl()) * 1000L);
+
+        return result;
+    }
+
+    /**
+     * Drop the decisions of an user
+     *
+     * @param userId
+     */
+    public void invalidateUser(String userId) {
+        cache.invalidateKeys((d) -> Objects.equals(d.userId, userId));
+    }
+
+    /**
+     * Drop the decisions on an object
+     *
+     * @param objectId
+     */
+    public void invalidateObject(String objectId) {
+        cache.invalidateKeys((d) -> Objects.equals(d.objectId, objectId));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void handle(DispatcherPayload payload, MessageHeaders headers) {
+        switch (payload.getType()) {
+            case user:
+                User user = ((UserPayload) payload).getUser();
+                if (user != null) {
+                    invalidateUser(user.getId());
+                }
+                break;
+            case device:
+                Device device = ((DevicePayload) payload).getDevice();
+                if (device != null && payload.getOp() != Operation.create) {
+                    invalidateObject(device.id());
+                }
+                break;
+            // token and app changes may affect any permission
+            case token:
+            case app:
+                log.debug("Drop authorization cache on {} {}", payload.getType(), payload.getOp());
+                clear();
+                break;
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(DeviceApplicationEvent event) {
+        Device device = event.getDeviceEvent().getDevice();
+        if (device != null && !Operation.create.name().equals(event.getDeviceEvent().getParentEvent())) {
+            invalidateObject(device.id());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList(cache.metrics("auth.authorization.cache"));
+        metrics.add(new Metric<>("auth.authorization.cache.mismatches", mismatches.sum()));
+        return metrics;
+    }
+
+}
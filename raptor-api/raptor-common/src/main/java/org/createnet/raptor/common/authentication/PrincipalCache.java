@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.authentication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import org.createnet.raptor.common.cache.ExpiringCache;
+import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
+import org.createnet.raptor.models.auth.Token;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.configuration.AuthConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.TokenPayload;
+import org.createnet.raptor.models.payload.UserPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per node cache of the users authenticated by token. Entries are keyed by the
+ * token hash and dropped on expiration or when a token or user event is
+ * received. A token event drops all the tokens of its user, as the value
+ * cached may be the one before the token was regenerated. Users of locally
+ * verified tokens are cached by id.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class PrincipalCache implements RaptorMessageHandler, PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(PrincipalCache.class);
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    private ExpiringCache<String, User> cache;
+    private ExpiringCache<String, User> users;
+
+    @PostConstruct
+    public void init() {
+        AuthConfiguration.CacheSettings settings = config.getAuth().getPrincipalCache();
+        cache = new ExpiringCache(settings.getMaxSize(), settings.getTtl() * 1000L);
+        users = new ExpiringCache(settings.getMaxSize(), settings.getTtl() * 1000L);
+    }
+
+    public boolean isEnabled() {
+        return config.getAuth().getPrincipalCache().isEnabled();
+    }
+
+    /**
+     * Return the user authenticated by a token, if cached
+     *
+     * @param token
+     * @return
+     */
+    public User get(String token) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return cache.get(hash(token));
+    }
+
+    /**
+     * Cache the user authenticated by a token, up to the token expiration
+     *
+     * @param token
+     * @param user
+     */
+    public void put(String token, User user) {
+        if (!isEnabled()) {
+            return;
+        }
+        Long expires = getExpiration(token);
+        long ttl = expires == null ? Long.MAX_VALUE : expires - System.currentTimeMillis();
+        cache.put(hash(token), user, ttl);
+    }
+
+    /**
+     * Return a cached user by id
+     *
+     * @param userId
+     * @return
+     */
+    public User getUser(String userId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return users.get(userId);
+    }
+
+    /**
+     * Cache a user by id
+     *
+     * @param user
+     */
+    public void putUser(User user) {
+        if (!isEnabled() || user.getId() == null) {
+            return;
+        }
+        users.put(user.getId(), user);
+    }
+
+    /**
+     * Drop the cached user of a token
+     *
+     * @param token
+     */
+    public void invalidate(String token) {
+        cache.invalidate(hash(token));
+    }
+
+    /**
+     * Drop all the tokens of an user
+     *
+     * @param user
+     */
+    public void invalidate(User user) {
+        if (user.getId() == null) {
+            return;
+        }
+        invalidateTokens(user.getId());
+        users.invalidate(user.getId());
+    }
+
+    /**
+     * Drop the cached tokens of an user
+     *
+     * @param userId
+     */
+    public void invalidateTokens(String userId) {
+        cache.invalidateIf((u) -> userId.equals(u.getId()));
+    }
+
+    @Override
+    public void handle(DispatcherPayload payload, MessageHeaders headers) {
+        switch (payload.getType()) {
+            case token:
+                Token token = ((TokenPayload) payload).getToken();
+                if (token == null) {
+                    break;
+                }
+                log.debug("Drop cached token {} on {}", token.getId(), payload.getOp());
+                if (token.getToken() != null) {
+                    invalidate(token.getToken());
+                }
+                if (token.getUser() != null && token.getUser().getId() != null) {
+                    invalidateTokens(token.getUser().getId());
+                }
+                break;
+            case user:
+                User user = ((UserPayload) payload).getUser();
+                if (user != null) {
+                    log.debug("Drop cached tokens of user {} on {}", user.getId(), payload.getOp());
+                    invalidate(user);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList(cache.metrics("auth.principal.cache"));
+        metrics.addAll(users.metrics("auth.principal.users"));
+        return metrics;
+    }
+
+    /**
+     * Return the expiration in milliseconds of a JWT token, without
+     * verifying it. Opaque tokens have no known expiration.
+     *
+     * @param token
+     * @return
+     */
+    protected Long getExpiration(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            JsonNode claims = Device.getMapper().readTree(Base64.getUrlDecoder().decode(parts[1]));
+            if (claims.has("exp")) {
+                return claims.get("exp").asLong() * 1000;
+            }
+        } catch (Exception ex) {
+            log.debug("Cannot read token expiration: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    protected String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+}
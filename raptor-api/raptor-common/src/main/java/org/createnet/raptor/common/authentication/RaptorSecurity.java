@@ -36,8 +36,21 @@ public class RaptorSecurity {
     @Autowired
     InternalApiClientService api;
 
+    @Autowired
+    AuthorizationCache authorizationCache;
+
     Logger log = LoggerFactory.getLogger(RaptorSecurity.class);
 
+    /**
+     * Check if the authenticated principal is an admin
+     *
+     * @param principal
+     * @return
+     */
+    public boolean isAdmin(Object principal) {
+        return principal instanceof User && ((User) principal).isAdmin();
+    }
+
     public boolean list(User u, EntityType entity) {
 
         boolean hasPermission = can(u, entity, Operation.read);
@@ -87,8 +100,14 @@ public class RaptorSecurity {
             objectId = null;
         }
 
-        AuthorizationResponse r = api.Admin().User().isAuthorized(u.getId(), entity, operation, objectId, domain);
-        return r.result;
+        final String id = objectId;
+        final String dom = domain;
+        AuthorizationCache.Decision decision = new AuthorizationCache.Decision(u.getId(), entity, operation, id, dom);
+
+        return authorizationCache.authorize(decision, () -> {
+            AuthorizationResponse r = api.Admin().User().isAuthorized(u.getId(), entity, operation, id, dom);
+            return r.result;
+        });
     }
 
 }
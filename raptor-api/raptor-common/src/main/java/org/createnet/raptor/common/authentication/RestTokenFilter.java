@@ -7,9 +7,8 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import org.createnet.raptor.models.auth.User;
 import org.createnet.raptor.models.configuration.RaptorConfiguration;
-import org.createnet.raptor.sdk.Raptor;
-import org.createnet.raptor.sdk.api.AuthClient;
 import org.createnet.raptor.sdk.exception.AuthenticationFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,10 +25,14 @@ public class RestTokenFilter extends GenericFilterBean {
 
     public RaptorConfiguration config;
     public TokenHelper tokenHelper;
+    public PrincipalCache principalCache;
+    public TokenVerifier tokenVerifier;
 
-    public RestTokenFilter(RaptorConfiguration config, TokenHelper tokenHelper) {
+    public RestTokenFilter(RaptorConfiguration config, TokenHelper tokenHelper, PrincipalCache principalCache, TokenVerifier tokenVerifier) {
         this.config = config;
         this.tokenHelper = tokenHelper;
+        this.principalCache = principalCache;
+        this.tokenVerifier = tokenVerifier;
     }
 
     @Override
@@ -43,14 +46,11 @@ public class RestTokenFilter extends GenericFilterBean {
         if (authToken != null && !authToken.isEmpty()) {
             try {
 
-                logger.debug("Attempting token authentication..");
+                String token = tokenHelper.extractToken(authToken);
 
-                Raptor client = new Raptor(config.getUrl(), tokenHelper.extractToken(authToken));
-                AuthClient.LoginState state = client.Auth().login();
+                User user = tokenVerifier.authenticate(token);
 
-                logger.debug("login ok, authenticated user `{}`", state.user.getUsername());
-
-                UserDetails userDetails = new RaptorUserDetails(state.user);
+                UserDetails userDetails = new RaptorUserDetails(user);
 
                 LoginAuthenticationToken authentication = new LoginAuthenticationToken(userDetails, authToken, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(httpRequest));
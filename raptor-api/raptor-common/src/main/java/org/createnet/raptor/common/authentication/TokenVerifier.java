@@ -0,0 +1,299 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.authentication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.createnet.raptor.common.cache.ExpiringCache;
+import org.createnet.raptor.common.client.InternalApiClientService;
+import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.auth.Token;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.configuration.AuthConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.TokenPayload;
+import org.createnet.raptor.models.payload.UserPayload;
+import org.createnet.raptor.sdk.Raptor;
+import org.createnet.raptor.sdk.api.AuthClient;
+import org.createnet.raptor.sdk.exception.AuthenticationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verify HMAC signed JWT tokens with the shared `raptor.auth.secret`, without
+ * calling the auth API.
+ *
+ * The user of the `userId` claim is loaded through the principal cache, so it
+ * carries the same roles, permissions and status of the remote login. Tokens
+ * which are opaque, signed with another key or missing the user claims are
+ * left to the remote login. Tokens deleted or disabled by a `token/+` event,
+ * and the tokens of users deleted or disabled by a `user/+` event, are
+ * rejected until they would expire.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class TokenVerifier implements RaptorMessageHandler, PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(TokenVerifier.class);
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private InternalApiClientService api;
+
+    private ExpiringCache<String, Boolean> revoked;
+    private ExpiringCache<String, Boolean> revokedUsers;
+
+    final private LongAdder verified = new LongAdder();
+    final private LongAdder rejected = new LongAdder();
+    final private LongAdder fallback = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        AuthConfiguration auth = config.getAuth();
+        revoked = new ExpiringCache(auth.getPrincipalCache().getMaxSize(), auth.getExpiration() * 1000L);
+        revokedUsers = new ExpiringCache(auth.getPrincipalCache().getMaxSize(), auth.getExpiration() * 1000L);
+    }
+
+    public boolean isEnabled() {
+        AuthConfiguration auth = config.getAuth();
+        return auth.isLocalVerification() && auth.getSecret() != null && !auth.getSecret().isEmpty();
+    }
+
+    /**
+     * Authenticate a token from the principal cache, locally or with a remote
+     * login
+     *
+     * @param token
+     * @return the authenticated user
+     * @throws AuthenticationFailedException if the token is not valid
+     */
+    public User authenticate(String token) {
+
+        User user = principalCache.get(token);
+        if (user == null) {
+            user = verify(token);
+        }
+        if (user == null) {
+
+            log.debug("Attempting token authentication..");
+
+            Raptor client = new Raptor(config.getUrl(), token);
+            AuthClient.LoginState state = client.Auth().login();
+            user = state.user;
+
+            principalCache.put(token, user);
+
+            log.debug("login ok, authenticated user `{}`", user.getUsername());
+        }
+
+        return user;
+    }
+
+    /**
+     * Verify a token locally
+     *
+     * @param token
+     * @return the authenticated user or null if the token cannot be verified
+     * locally
+     * @throws AuthenticationFailedException if the token is expired or revoked
+     */
+    public User verify(String token) {
+
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            fallback.increment();
+            return null;
+        }
+
+        try {
+
+            JsonNode header = Device.getMapper().readTree(Base64.getUrlDecoder().decode(parts[0]));
+            String algorithm = getAlgorithm(header.path("alg").asText());
+            if (algorithm == null) {
+                fallback.increment();
+                return null;
+            }
+
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(config.getAuth().getSecret().getBytes(StandardCharsets.UTF_8), algorithm));
+            byte[] signature = mac.doFinal((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+
+            if (!MessageDigest.isEqual(signature, Base64.getUrlDecoder().decode(parts[2]))) {
+                fallback.increment();
+                return null;
+            }
+
+            JsonNode claims = Device.getMapper().readTree(Base64.getUrlDecoder().decode(parts[1]));
+
+            if (!claims.has("userId") || !claims.has("sub")) {
+                fallback.increment();
+                return null;
+            }
+
+            if (claims.has("exp") && claims.get("exp").asLong() * 1000 <= System.currentTimeMillis()) {
+                rejected.increment();
+                throw new AuthenticationFailedException("Token expired");
+            }
+
+            if (revoked.get(principalCache.hash(token)) != null) {
+                rejected.increment();
+                throw new AuthenticationFailedException("Token revoked");
+            }
+
+            String userId = claims.get("userId").asText();
+            if (revokedUsers.get(userId) != null) {
+                rejected.increment();
+                throw new AuthenticationFailedException("User revoked");
+            }
+
+            User user = loadUser(userId);
+            if (user == null) {
+                fallback.increment();
+                return null;
+            }
+
+            if (!user.isEnabled()) {
+                rejected.increment();
+                throw new AuthenticationFailedException("User disabled");
+            }
+
+            verified.increment();
+            return user;
+
+        } catch (AuthenticationFailedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.debug("Cannot verify token locally: {}", ex.getMessage());
+            fallback.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Load the user of a token, from the principal cache or the auth API
+     *
+     * @param userId
+     * @return
+     */
+    protected User loadUser(String userId) {
+        User user = principalCache.getUser(userId);
+        if (user == null) {
+            user = api.Admin().User().get(userId);
+            if (user != null) {
+                principalCache.putUser(user);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Revoke a token until it would expire
+     *
+     * @param token
+     */
+    public void revoke(String token) {
+        revoked.put(principalCache.hash(token), true);
+    }
+
+    /**
+     * Revoke all the tokens of an user until they would expire
+     *
+     * @param userId
+     */
+    public void revokeUser(String userId) {
+        revokedUsers.put(userId, true);
+    }
+
+    @Override
+    public void handle(DispatcherPayload payload, MessageHeaders headers) {
+        if (payload.getType() == EntityType.user) {
+            User user = ((UserPayload) payload).getUser();
+            if (user == null || user.getId() == null) {
+                return;
+            }
+            if (payload.getOp() == Operation.delete || !user.isEnabled()) {
+                log.debug("Revoke tokens of user {}", user.getId());
+                revokeUser(user.getId());
+            } else {
+                revokedUsers.invalidate(user.getId());
+            }
+            return;
+        }
+        if (payload.getType() != EntityType.token) {
+            return;
+        }
+        Token token = ((TokenPayload) payload).getToken();
+        if (token == null || token.getToken() == null) {
+            return;
+        }
+        if (payload.getOp() == Operation.delete || !token.isEnabled()) {
+            log.debug("Revoke token {}", token.getId());
+            revoke(token.getToken());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("auth.token.local.verified", verified.sum()));
+        metrics.add(new Metric<>("auth.token.local.rejected", rejected.sum()));
+        metrics.add(new Metric<>("auth.token.local.fallback", fallback.sum()));
+        metrics.add(new Metric<>("auth.token.local.revoked", revoked.size()));
+        metrics.add(new Metric<>("auth.token.local.revokedUsers", revokedUsers.size()));
+        return metrics;
+    }
+
+    protected String getAlgorithm(String alg) {
+        switch (alg) {
+            case "HS256":
+                return "HmacSHA256";
+            case "HS384":
+                return "HmacSHA384";
+            case "HS512":
+                return "HmacSHA512";
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import javax.cache.CacheManager;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Export the JCache statistics of the Spring managed caches. Hit and miss
+ * ratios are already provided by the actuator as cache.{name}.*.ratio
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class CacheMetrics implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(CacheMetrics.class);
+
+    final private static String[] attributes = new String[]{"CacheHits", "CacheMisses", "CacheGets", "CachePuts", "CacheEvictions", "CacheRemovals"};
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (String name : cacheManager.getCacheNames()) {
+            try {
+
+                Set<ObjectName> found = server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,Cache=" + name + ",*"), null);
+                if (found.isEmpty()) {
+                    continue;
+                }
+
+                ObjectName objectName = found.iterator().next();
+                for (String attribute : attributes) {
+                    Number value = (Number) server.getAttribute(objectName, attribute);
+                    metrics.add(new Metric<>("cache." + name + "." + attribute.substring(5).toLowerCase(), value));
+                }
+
+            } catch (Exception ex) {
+                log.debug("Cannot read statistics of cache {}: {}", name, ex.getMessage());
+            }
+        }
+
+        return metrics;
+    }
+
+}
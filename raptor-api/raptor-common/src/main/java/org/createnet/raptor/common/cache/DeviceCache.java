@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import org.createnet.raptor.common.client.InternalApiClientService;
+import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
+import org.createnet.raptor.common.dispatcher.events.DeviceApplicationEvent;
+import org.createnet.raptor.common.dispatcher.events.listener.SynchronousApplicationListener;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.configuration.CacheConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.payload.DevicePayload;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.sdk.Topics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of device definitions loaded from the inventory API.
+ *
+ * Device events update the cached definition if newer than the cached one,
+ * comparing `version`, or drop it on delete.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class DeviceCache implements RaptorMessageHandler, PublicMetrics, SynchronousApplicationListener<DeviceApplicationEvent> {
+
+    final private Logger log = LoggerFactory.getLogger(DeviceCache.class);
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private InternalApiClientService api;
+
+    private CacheConfiguration.DeviceCacheConfiguration settings;
+    private ExpiringCache<String, Device> cache;
+
+    final private LongAdder refreshed = new LongAdder();
+    final private LongAdder stale = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        settings = config.getCache().getDevices();
+        cache = new ExpiringCache(settings.getMaxSize(), settings.getTtl() * 1000L);
+    }
+
+    /**
+     * Return a device definition, loading it from the inventory if not cached
+     *
+     * @param id
+     * @return
+     */
+    public Device load(String id) {
+
+        if (!settings.isEnabled()) {
+            return api.Inventory().load(id);
+        }
+
+        Device device = cache.get(id);
+        if (device == null) {
+            device = api.Inventory().load(id);
+            update(device);
+        }
+
+        return device;
+    }
+
+    /**
+     * Store a device definition unless an newer version is already cached
+     *
+     * @param device
+     */
+    public void update(Device device) {
+
+        Device cached = cache.peek(device.id());
+        if (cached != null && cached.getVersion() > device.getVersion()) {
+            stale.increment();
+            log.debug("Skip stale definition of device {}", device.id());
+            return;
+        }
+
+        cache.put(device.id(), device);
+    }
+
+    /**
+     * Drop a device definition
+     *
+     * @param id
+     */
+    public void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    protected void onDeviceChange(Operation op, Device device) {
+
+        if (device == null || device.id() == null) {
+            return;
+        }
+
+        switch (op) {
+            case delete:
+                invalidate(device.id());
+                Topics.forget(device.id());
+                break;
+            case update:
+                // refresh only devices in use on this node
+                if (cache.peek(device.id()) != null) {
+                    refreshed.increment();
+                    update(device);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void handle(DispatcherPayload payload, MessageHeaders headers) {
+        if (payload.getType() != EntityType.device) {
+            return;
+        }
+        onDeviceChange(payload.getOp(), ((DevicePayload) payload).getDevice());
+    }
+
+    @Override
+    public void onApplicationEvent(DeviceApplicationEvent event) {
+        onDeviceChange(Operation.valueOf(event.getDeviceEvent().getParentEvent()), event.getDeviceEvent().getDevice());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList(cache.metrics("device.cache"));
+        metrics.add(new Metric<>("device.cache.refreshed", refreshed.sum()));
+        metrics.add(new Metric<>("device.cache.stale", stale.sum()));
+        return metrics;
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Bounded in-memory cache with per entry expiration. Reads are lock free, once
+ * the max size is exceeded the least recently used tenth of the entries is
+ * evicted.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ * @param <K>
+ * @param <V>
+ */
+public class ExpiringCache<K, V> {
+
+    private static class Entry<V> {
+
+        final V value;
+        final long expires;
+
+        // clock value of the last read or write
+        volatile long used;
+
+        Entry(V value, long expires, long used) {
+            this.value = value;
+            this.expires = expires;
+            this.used = used;
+        }
+
+        boolean isExpired(long now) {
+            return expires <= now;
+        }
+    }
+
+    final private int maxSize;
+    final private long ttl;
+    final private ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap();
+
+    // advanced on every write, orders the entries by last use
+    final private AtomicLong clock = new AtomicLong();
+
+    final private LongAdder hits = new LongAdder();
+    final private LongAdder misses = new LongAdder();
+    final private LongAdder evictions = new LongAdder();
+    final private LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize max amount of entries
+     * @param ttl default time to live in milliseconds
+     */
+    public ExpiringCache(int maxSize, long ttl) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Return a cached value or null if missing or expired
+     *
+     * @param key
+     * @return
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        entry.used = clock.get();
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Return a cached value without affecting the statistics
+     *
+     * @param key
+     * @return
+     */
+    public V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Store a value with the default time to live
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        put(key, value, ttl);
+    }
+
+    /**
+     * Store a value with a specific time to live, capped to the default one
+     *
+     * @param key
+     * @param value
+     * @param ttl time to live in milliseconds
+     */
+    public void put(K key, V value, long ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+        long expires = System.currentTimeMillis() + Math.min(ttl, this.ttl);
+        entries.put(key, new Entry(value, expires, clock.incrementAndGet()));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Drop the expired entries and the least recently used tenth of the
+     * others
+     */
+    protected synchronized void evict() {
+
+        if (entries.size() <= maxSize) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        entries.forEach((key, entry) -> {
+            if (entry.isExpired(now) && entries.remove(key, entry)) {
+                evictions.increment();
+            }
+        });
+
+        int count = entries.size() - maxSize + maxSize / 10;
+        if (count <= 0) {
+            return;
+        }
+
+        entries.entrySet().stream()
+                .sorted(Comparator.comparingLong((e) -> e.getValue().used))
+                .limit(count)
+                .collect(Collectors.toList())
+                .forEach((e) -> {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                    }
+                });
+    }
+
+    /**
+     * Drop an entry
+     *
+     * @param key
+     */
+    public void invalidate(K key) {
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Drop all the entries whose value match the predicate
+     *
+     * @param predicate
+     */
+    public void invalidateIf(Predicate<V> predicate) {
+        entries.forEach((key, entry) -> {
+            if (predicate.test(entry.value) && entries.remove(key, entry)) {
+                invalidations.increment();
+            }
+        });
+    }
+
+    /**
+     * Drop all the entries whose key match the predicate
+     *
+     * @param predicate
+     */
+    public void invalidateKeys(Predicate<K> predicate) {
+        entries.forEach((key, entry) -> {
+            if (predicate.test(key) && entries.remove(key, entry)) {
+                invalidations.increment();
+            }
+        });
+    }
+
+    /**
+     * Drop all the entries
+     */
+    public void clear() {
+        entries.forEach((key, entry) -> {
+            if (entries.remove(key, entry)) {
+                invalidations.increment();
+            }
+        });
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Export the cache statistics as a list of metrics
+     *
+     * @param prefix name prefix of the metrics
+     * @return
+     */
+    public Collection<Metric<?>> metrics(String prefix) {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>(prefix + ".size", size()));
+        metrics.add(new Metric<>(prefix + ".hits", getHits()));
+        metrics.add(new Metric<>(prefix + ".misses", getMisses()));
+        metrics.add(new Metric<>(prefix + ".evictions", getEvictions()));
+        metrics.add(new Metric<>(prefix + ".invalidations", getInvalidations()));
+        return metrics;
+    }
+
+}
@@ -15,10 +15,29 @@
  */
 package org.createnet.raptor.common.configuration;
 
+import org.createnet.raptor.common.authentication.AuthorizationCache;
+import org.createnet.raptor.common.authentication.PrincipalCache;
 import org.createnet.raptor.common.authentication.RaptorAuthenticationEntryPoint;
 import org.createnet.raptor.common.authentication.TokenAuthenticationProvider;
+import org.createnet.raptor.common.authentication.TokenVerifier;
+import org.createnet.raptor.common.cache.DeviceCache;
+import org.createnet.raptor.common.dispatcher.transport.DispatcherTransport;
+import org.createnet.raptor.common.dispatcher.transport.LocalTransport;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.sdk.Topics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -45,5 +64,81 @@ public class AuthenticationConfiguration {
     public AuthenticationEntryPoint authenticationEntryPoint() {
         return new RaptorAuthenticationEntryPoint();
     }
-    
+
+    @Autowired
+    MqttPahoClientFactory mqttClientFactory;
+
+    @Autowired
+    PrincipalCache principalCache;
+
+    @Autowired
+    AuthorizationCache authorizationCache;
+
+    @Autowired
+    TokenVerifier tokenVerifier;
+
+    @Autowired
+    DeviceCache deviceCache;
+
+    @Autowired
+    DispatcherTransport dispatcherTransport;
+
+    private boolean localAuthEvents = false;
+
+    // Token, user, app and device lifecycle events, used to invalidate the
+    // cached principals, authorizations and device definitions and to revoke
+    // locally verified tokens. Device data and actions are not subscribed
+    @Bean
+    public MessageChannel authEventsChannel() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    @ServiceActivator(inputChannel = "authEventsChannel")
+    public MessageHandler authEventsHandler() {
+        return (message) -> {
+            try {
+                handleAuthEvent(DispatcherPayload.parse(message.getPayload()), message.getHeaders());
+            } catch (Exception e) {
+                throw new MessagingException("Exception handling message", e);
+            }
+        };
+    }
+
+    protected void handleAuthEvent(DispatcherPayload payload, MessageHeaders headers) {
+        principalCache.handle(payload, headers);
+        authorizationCache.handle(payload, headers);
+        tokenVerifier.handle(payload, headers);
+        deviceCache.handle(payload, headers);
+    }
+
+    protected String[] authEventsTopics() {
+        return new String[]{Topics.token(Topics.ANY), Topics.user(Topics.ANY), Topics.app(Topics.ANY), Topics.lifecycle(Topics.ANY)};
+    }
+
+    @Bean
+    public MessageProducer authEventsClient() {
+        // not shared, every replica keeps its own caches
+        return MqttConfiguration.inboundAdapter(mqttClientFactory, authEventsChannel(), 1, authEventsTopics());
+    }
+
+    /**
+     * Without forwarding the local transport publishes nothing on the broker,
+     * deliver the events to the caches in process
+     */
+    @EventListener({ContextRefreshedEvent.class})
+    synchronized void subscribeLocalAuthEvents() {
+        if (localAuthEvents || !(dispatcherTransport instanceof LocalTransport)) {
+            return;
+        }
+        LocalTransport local = (LocalTransport) dispatcherTransport;
+        if (local.isForwarding()) {
+            return;
+        }
+        for (String topic : authEventsTopics()) {
+            local.subscribe(topic, this::handleAuthEvent);
+        }
+        localAuthEvents = true;
+    }
+
 }
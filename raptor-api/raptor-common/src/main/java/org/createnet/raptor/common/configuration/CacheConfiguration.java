@@ -15,7 +15,27 @@
  */
 package org.createnet.raptor.common.configuration;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import org.createnet.raptor.models.configuration.CacheConfiguration.CacheSettings;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+import org.ehcache.expiry.Duration;
+import org.ehcache.expiry.Expiry;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.jcache.JCacheCacheManager;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
@@ -26,4 +46,109 @@ import org.springframework.context.annotation.Configuration;
 @EnableCaching
 public class CacheConfiguration {
 
+    @Autowired
+    RaptorConfiguration config;
+
+    /**
+     * Ehcache backed JCache manager, creating the caches listed in
+     * `raptor.cache.caches`
+     *
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    public javax.cache.CacheManager jCacheManager() {
+
+        CachingProvider provider = Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        javax.cache.CacheManager manager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        config.getCache().getCaches().forEach((name, settings) -> {
+            if (manager.getCache(name) == null) {
+                manager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(createCacheConfiguration(name, settings)));
+            }
+            manager.enableStatistics(name, true);
+        });
+
+        return manager;
+    }
+
+    @Bean
+    public CacheManager cacheManager() {
+        return new JCacheCacheManager(jCacheManager());
+    }
+
+    protected org.ehcache.config.CacheConfiguration<Object, Object> createCacheConfiguration(String name, CacheSettings settings) {
+
+        // values are cached as they are, off-heap tiers need serializable ones
+        if (settings.getOffheap() > 0) {
+            throw new IllegalStateException("Off-heap storage is not supported for cache `" + name + "`, values are not serializable");
+        }
+
+        // write time of the entries, so reads do not extend them past the TTL
+        Map<Object, Long> written = new ConcurrentHashMap<>();
+
+        CacheConfigurationBuilder<Object, Object> builder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(settings.getHeap()))
+                .withExpiry(createExpiry(settings, written));
+
+        if (settings.getTtl() > 0 && settings.getTti() > 0) {
+            CacheEventListener<Object, Object> cleanup = (event) -> written.remove(event.getKey());
+            builder = builder.add(CacheEventListenerConfigurationBuilder
+                    .newEventListenerConfiguration(cleanup, EventType.EVICTED, EventType.EXPIRED, EventType.REMOVED)
+                    .ordered().synchronous());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * TTL applies on creation and update, TTI on every read without going
+     * past the TTL
+     *
+     * @param settings
+     * @param written write time of the entries, tracked if both TTL and TTI
+     * are set
+     * @return
+     */
+    protected Expiry<Object, Object> createExpiry(CacheSettings settings, Map<Object, Long> written) {
+
+        final long ttl = TimeUnit.SECONDS.toMillis(settings.getTtl());
+        final long tti = TimeUnit.SECONDS.toMillis(settings.getTti());
+
+        return new Expiry<Object, Object>() {
+            @Override
+            public Duration getExpiryForCreation(Object key, Object value) {
+                if (ttl > 0 && tti > 0) {
+                    written.put(key, System.currentTimeMillis());
+                    return Duration.of(Math.min(ttl, tti), TimeUnit.MILLISECONDS);
+                }
+                if (ttl > 0) {
+                    return Duration.of(ttl, TimeUnit.MILLISECONDS);
+                }
+                return tti > 0 ? Duration.of(tti, TimeUnit.MILLISECONDS) : Duration.INFINITE;
+            }
+
+            @Override
+            public Duration getExpiryForAccess(Object key, org.ehcache.ValueSupplier<?> value) {
+                if (tti == 0) {
+                    // keep the current expiration
+                    return null;
+                }
+                if (ttl == 0) {
+                    return Duration.of(tti, TimeUnit.MILLISECONDS);
+                }
+                Long time = written.get(key);
+                if (time == null) {
+                    return null;
+                }
+                long remaining = ttl - (System.currentTimeMillis() - time);
+                return remaining <= 0 ? Duration.ZERO : Duration.of(Math.min(tti, remaining), TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public Duration getExpiryForUpdate(Object key, org.ehcache.ValueSupplier<?> oldValue, Object newValue) {
+                return getExpiryForCreation(key, newValue);
+            }
+        };
+    }
+
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.configuration;
+
+import java.util.List;
+import org.createnet.raptor.models.data.DataFormat;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/**
+ * Accept and produce the binary data formats (CBOR, Smile) when requested by
+ * `Content-Type` and `Accept`. The converters are appended after the JSON one
+ * so JSON stays the default for wildcard requests.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Configuration
+public class DataFormatConfiguration extends WebMvcConfigurerAdapter {
+
+    /**
+     * Jackson converter bound to a binary data format
+     */
+    static public class DataFormatHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+        public DataFormatHttpMessageConverter(DataFormat format) {
+            super(format.getMapper(), MediaType.parseMediaType(format.getMediaType()));
+        }
+
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (DataFormat format : DataFormat.values()) {
+            if (format.isBinary()) {
+                converters.add(new DataFormatHttpMessageConverter(format));
+            }
+        }
+    }
+
+}
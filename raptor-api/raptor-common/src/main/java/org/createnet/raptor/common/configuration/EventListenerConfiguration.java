@@ -15,12 +15,19 @@
  */
 package org.createnet.raptor.common.configuration;
 
+import org.createnet.raptor.common.dispatcher.events.LaneEventMulticaster;
 import org.createnet.raptor.common.dispatcher.events.listener.ActionApplicationEventListener;
 import org.createnet.raptor.common.dispatcher.events.listener.DeviceApplicationEventListener;
 import org.createnet.raptor.common.dispatcher.events.listener.StreamApplicationEventListener;
 import org.createnet.raptor.common.dispatcher.events.listener.TreeNodeApplicationEventListener;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ApplicationEventMulticaster;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.context.support.AbstractApplicationContext;
 
 /**
  *
@@ -28,6 +35,24 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class EventListenerConfiguration {
+
+    @Autowired
+    RaptorConfiguration raptorConfiguration;
+
+    /**
+     * Deliver the application events on ordered lanes when
+     * `dispatcher.events.async` is enabled
+     *
+     * @return
+     */
+    @Bean(name = AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME)
+    ApplicationEventMulticaster applicationEventMulticaster() {
+        DispatcherConfiguration.EventsConfiguration events = raptorConfiguration.getDispatcher().getEvents();
+        if (!events.isAsync()) {
+            return new SimpleApplicationEventMulticaster();
+        }
+        return new LaneEventMulticaster(events);
+    }
     
     @Bean
     DeviceApplicationEventListener deviceApplicationEventListener() {
@@ -17,7 +17,11 @@ package org.createnet.raptor.common.configuration;
 
 import static org.createnet.raptor.common.BaseApplication.log;
 import org.createnet.raptor.common.dispatcher.BrokerClient;
-import org.createnet.raptor.common.dispatcher.RaptorMessageHandlerWrapper;
+import org.createnet.raptor.common.dispatcher.PartitionedChannel;
+import org.createnet.raptor.common.dispatcher.MessageHandlerRegistry;
+import org.createnet.raptor.common.dispatcher.transport.DispatcherTransport;
+import org.createnet.raptor.common.dispatcher.transport.LocalTransport;
+import org.createnet.raptor.common.dispatcher.transport.MqttTransport;
 import org.createnet.raptor.models.configuration.AuthConfiguration;
 import org.createnet.raptor.models.configuration.DispatcherConfiguration;
 import org.createnet.raptor.models.configuration.RaptorConfiguration;
@@ -28,6 +32,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.messaging.Message;
@@ -69,14 +76,60 @@ public class MqttConfiguration {
         return f;
     }
 
+    /**
+     * Inbound converter keeping the raw payload, which may be binary
+     *
+     * @return
+     */
+    public static DefaultPahoMessageConverter inboundConverter() {
+        DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+        converter.setPayloadAsBytes(true);
+        return converter;
+    }
+
+    /**
+     * Create an inbound MQTT connection, delivering the messages of the
+     * subscribed topics to a channel
+     *
+     * @param clientFactory
+     * @param output
+     * @param qos
+     * @param subscriptions
+     * @return
+     */
+    public static MessageProducer inboundAdapter(MqttPahoClientFactory clientFactory, MessageChannel output, int qos, String... subscriptions) {
+        MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter("raptor" + (System.currentTimeMillis() + Math.random()), clientFactory, subscriptions);
+        adapter.setCompletionTimeout(5000);
+        adapter.setConverter(inboundConverter());
+        adapter.setQos(qos);
+        adapter.setRecoveryInterval(2500);
+        adapter.setOutputChannel(output);
+        return adapter;
+    }
+
     // Add inbound MQTT support
+    /**
+     * Inbound channel, partitioned by the topic id when more than one
+     * partition is configured
+     *
+     * @param name
+     * @param consumer
+     * @return
+     */
+    public static MessageChannel inputChannel(String name, DispatcherConfiguration.ConsumerConfiguration consumer) {
+        if (consumer.getPartitions() > 1) {
+            return new PartitionedChannel(name, consumer.getPartitions(), consumer.getQueueLength());
+        }
+        return new DirectChannel();
+    }
+
     @Bean
     public MessageChannel mqttInputChannel() {
-        return new DirectChannel();
+        return inputChannel("mqttInputChannel", raptorConfiguration.getDispatcher().getConsumer());
     }
 
     @Autowired
-    RaptorMessageHandlerWrapper raptorMessageHandlerWrapper;
+    MessageHandlerRegistry messageHandlerRegistry;
 
     @Bean
     @ServiceActivator(inputChannel = "mqttInputChannel")
@@ -84,10 +137,13 @@ public class MqttConfiguration {
         return new MessageHandler() {
             @Override
             public void handleMessage(Message<?> message) throws MessagingException {
-                if (raptorMessageHandlerWrapper != null) {
+                if (messageHandlerRegistry != null) {
                     try {
-                        DispatcherPayload payload = DispatcherPayload.parseJSON(message.getPayload().toString());
-                        raptorMessageHandlerWrapper.handle(payload, message.getHeaders());
+                        if (message.getPayload() instanceof byte[]) {
+                            messageHandlerRegistry.handle((byte[]) message.getPayload(), message.getHeaders());
+                        } else {
+                            messageHandlerRegistry.handle(DispatcherPayload.parse(message.getPayload()), message.getHeaders());
+                        }
                     } catch (Exception e) {
                         throw new MessagingException("Exception handling message", e);
                     }
@@ -96,10 +152,25 @@ public class MqttConfiguration {
         };
     }
 
+    /**
+     * Event transport selected by `dispatcher.protocol`
+     *
+     * @return
+     */
+    @Bean
+    public DispatcherTransport dispatcherTransport() {
+        DispatcherConfiguration dispatcher = raptorConfiguration.getDispatcher();
+        if (DispatcherTransport.LOCAL.equals(dispatcher.getProtocol())) {
+            log.info("Delivering events in process{}", dispatcher.isForward() ? ", forwarding to the broker" : "");
+            return new LocalTransport(messageHandlerRegistry, dispatcher.isForward() ? new MqttTransport(brokerClient()) : null, dispatcher.getQueueLength());
+        }
+        return new MqttTransport(brokerClient());
+    }
+
     @Bean
     protected BrokerClient brokerClient() {
         String clientId = "raptor" + (System.currentTimeMillis() + Math.random());
-        return new BrokerClient(raptorConfiguration.getDispatcher().getUri(), clientId, mqttClientFactory());
+        return new BrokerClient(raptorConfiguration.getDispatcher().getUri(), clientId, mqttClientFactory(), raptorConfiguration.getDispatcher());
     }
     
 }
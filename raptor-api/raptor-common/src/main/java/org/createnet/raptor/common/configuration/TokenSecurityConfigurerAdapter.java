@@ -15,7 +15,9 @@
  */
 package org.createnet.raptor.common.configuration;
 
+import org.createnet.raptor.common.authentication.PrincipalCache;
 import org.createnet.raptor.common.authentication.RestTokenFilter;
+import org.createnet.raptor.common.authentication.TokenVerifier;
 import org.createnet.raptor.models.configuration.RaptorConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
@@ -42,6 +44,16 @@ import org.springframework.security.web.authentication.AnonymousAuthenticationFi
 @ConditionalOnExpression("!({'auth'}.contains('${spring.config.name}'))")
 public class TokenSecurityConfigurerAdapter extends WebSecurityConfigurerAdapter {
 
+    /**
+     * Actuator endpoints, reserved to admins. Only metrics and health are
+     * enabled in the default configuration
+     */
+    final public static String[] ACTUATOR_PATHS = new String[]{
+        "/metrics/**", "/env/**", "/heapdump/**", "/dump/**", "/trace/**",
+        "/configprops/**", "/beans/**", "/mappings/**", "/autoconfig/**",
+        "/loggers/**", "/auditevents/**", "/info/**"
+    };
+
     @Autowired
     AuthenticationEntryPoint authenticationEntryPoint;   
     
@@ -58,9 +70,15 @@ public class TokenSecurityConfigurerAdapter extends WebSecurityConfigurerAdapter
 
     @Autowired
     public RaptorConfiguration config;    
+
+    @Autowired
+    public PrincipalCache principalCache;
+
+    @Autowired
+    public TokenVerifier tokenVerifier;
     
     RestTokenFilter restTokenFilter() {
-        return new RestTokenFilter(config, tokenHelper);
+        return new RestTokenFilter(config, tokenHelper, principalCache, tokenVerifier);
     }
     
     protected void configureShared(HttpSecurity http) throws Exception {
@@ -71,6 +89,7 @@ public class TokenSecurityConfigurerAdapter extends WebSecurityConfigurerAdapter
                 .cors().and()
                 .authorizeRequests()
                 .antMatchers("/auth/login").permitAll()
+                .antMatchers(ACTUATOR_PATHS).access("@raptorSecurity.isAdmin(principal)")
                 .anyRequest().authenticated()
                 .and().headers().cacheControl();
         
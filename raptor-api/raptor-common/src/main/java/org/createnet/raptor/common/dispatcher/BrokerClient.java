@@ -15,55 +15,283 @@
  */
 package org.createnet.raptor.common.dispatcher;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.createnet.raptor.common.metrics.Histogram;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
+ * MQTT client publishing the dispatcher events.
+ *
+ * In async mode messages are queued and published by dedicated threads, so a
+ * slow or unavailable broker does not stall the caller, and failed publishes
+ * are retried with a backoff. Each topic is bound to a single publisher thread
+ * to preserve the order of its messages, and concurrent publishes are bounded
+ * by the amount of threads.
+ *
+ * In sync mode the caller thread publishes once, without retrying.
  *
  * @author Luca Capra <luca.capra@gmail.com>
  */
-public class BrokerClient extends MqttPahoMessageHandler {
+public class BrokerClient extends MqttPahoMessageHandler implements PublicMetrics {
 
     final Logger log = LoggerFactory.getLogger(BrokerClient.class);
-    
-    
-    
+
+    final static protected int MAX_RETRY = 5;
+    final static protected int BATCH_SIZE = 100;
+
+    /**
+     * A message waiting to be published
+     */
+    static protected class Outbound {
+
+        final String topic;
+        final byte[] payload;
+        final long queuedAt = System.currentTimeMillis();
+
+        Outbound(String topic, byte[] payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+
+    private DispatcherConfiguration settings;
+    private List<BlockingQueue<Outbound>> lanes;
+    private ExecutorService publishers;
+    private volatile boolean running = false;
+
+    final private LongAdder published = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+    final private LongAdder dropped = new LongAdder();
+    final private Histogram queueLatency = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000);
+    final private Histogram publishLatency = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000);
+
     public BrokerClient(String clientId, MqttPahoClientFactory clientFactory) {
         super(clientId, clientFactory);
         this.setAsync(false);
     }
-    
+
     public BrokerClient(String url, String clientId, MqttPahoClientFactory clientFactory) {
         super(url, clientId, clientFactory);
         this.setAsync(false);
     }
-    
+
+    public BrokerClient(String url, String clientId, MqttPahoClientFactory clientFactory, DispatcherConfiguration settings) {
+        this(url, clientId, clientFactory);
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void startPublishers() {
+
+        if (settings == null || !settings.isAsync()) {
+            return;
+        }
+
+        int poolSize = Math.max(1, settings.getPoolSize());
+        int laneLength = Math.max(1, settings.getQueueLength() / poolSize);
+
+        lanes = new ArrayList(poolSize);
+        publishers = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("broker-publisher-"));
+
+        running = true;
+        for (int i = 0; i < poolSize; i++) {
+            BlockingQueue<Outbound> lane = new ArrayBlockingQueue(laneLength);
+            lanes.add(lane);
+            publishers.submit(() -> drain(lane));
+        }
+
+        log.info("Started async MQTT publishing [publishers={} queueLength={} overflow={}]", poolSize, laneLength * poolSize, settings.getOverflowPolicy());
+    }
+
+    @PreDestroy
+    public void stopPublishers() {
+
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        publishers.shutdown();
+
+        try {
+            if (!publishers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("MQTT publishers did not terminate, {} messages not published", getQueueSize());
+                publishers.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            publishers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Return true if messages are published by the publisher threads
+     *
+     * @return
+     */
+    public boolean isAsyncPublishing() {
+        return running;
+    }
+
+    /**
+     * Publish a message, or queue it in async mode
+     *
+     * @param topic
+     * @param message
+     */
     public void sendMessage(String topic, String message) {
-        
-        int retry = 0, max = 5;
-        while(retry < max) {
+        sendMessage(topic, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Publish a message, or queue it in async mode
+     *
+     * @param topic
+     * @param payload
+     */
+    public void sendMessage(String topic, byte[] payload) {
+
+        if (!running) {
+            publishWithRetry(topic, payload, 1);
+            return;
+        }
+
+        Outbound message = new Outbound(topic, payload);
+        BlockingQueue<Outbound> lane = lanes.get((topic.hashCode() & Integer.MAX_VALUE) % lanes.size());
+
+        boolean queued;
+        if (settings.getOverflowPolicy() == DispatcherConfiguration.OverflowPolicy.block) {
+            try {
+                queued = lane.offer(message, settings.getBlockTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = lane.offer(message);
+        }
+
+        if (!queued) {
+            dropped.increment();
+            log.warn("Outbound queue full, message dropped [topic={}]", topic);
+        }
+    }
+
+    /**
+     * Publisher loop, publish the queued messages until stopped and the lane
+     * is empty
+     *
+     * @param lane
+     */
+    protected void drain(BlockingQueue<Outbound> lane) {
+
+        final List<Outbound> batch = new ArrayList();
+
+        while (running || !lane.isEmpty()) {
             try {
-                
+
+                Outbound first = lane.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                lane.drainTo(batch, BATCH_SIZE - 1);
+
+                for (Outbound message : batch) {
+                    queueLatency.record(System.currentTimeMillis() - message.queuedAt);
+                    publishWithRetry(message.topic, message.payload, MAX_RETRY);
+                }
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error("MQTT publisher failure: {}", ex.getMessage(), ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Publish a message, retrying with a growing backoff
+     *
+     * @param topic
+     * @param payload
+     * @param attempts max publish attempts, 1 to not retry
+     */
+    protected void publishWithRetry(String topic, byte[] payload, int attempts) {
+
+        int retry = 0;
+        while (retry < attempts) {
+            try {
+
                 log.debug("Publishing to [topic={}]", topic);
-                
-                MqttMessage payload = new MqttMessage(message.getBytes());
-                publish(topic, payload, null);
-                
+
+                long start = System.currentTimeMillis();
+                publish(topic, new MqttMessage(payload), null);
+                publishLatency.record(System.currentTimeMillis() - start);
+                published.increment();
+
                 log.debug("Published correctly [topic={}]", topic);
                 return;
-                
-            } catch(Exception ex) {
-                log.warn("Error on publish [topic={} retry={}/{}] {}", topic, retry, max, ex.getMessage());
+
+            } catch (Exception ex) {
+                retry++;
+                log.warn("Error on publish [topic={} try={}/{}] {}", topic, retry, attempts, ex.getMessage());
+                if (retry >= attempts) {
+                    break;
+                }
                 try {
                     Thread.sleep(500 * retry);
-                } catch (InterruptedException ex1) {}
-                retry ++;
+                } catch (InterruptedException ex1) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
-        log.warn("Publishing failed after {} tries", retry);
+
+        failed.increment();
+        log.warn("Publishing failed after {} tries [topic={}]", retry, topic);
+    }
+
+    public int getQueueSize() {
+        if (lanes == null) {
+            return 0;
+        }
+        return lanes.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("dispatcher.queue.size", getQueueSize()));
+        metrics.add(new Metric<>("dispatcher.published", published.sum()));
+        metrics.add(new Metric<>("dispatcher.failed", failed.sum()));
+        metrics.add(new Metric<>("dispatcher.dropped", dropped.sum()));
+        metrics.addAll(queueLatency.metrics("dispatcher.queue.latency"));
+        metrics.addAll(publishLatency.metrics("dispatcher.publish.latency"));
+        return metrics;
     }
-    
+
 }
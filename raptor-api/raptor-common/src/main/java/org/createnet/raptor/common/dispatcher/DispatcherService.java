@@ -15,6 +15,7 @@
  */
 package org.createnet.raptor.common.dispatcher;
 
+import org.createnet.raptor.common.dispatcher.transport.DispatcherTransport;
 import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.app.App;
 import org.createnet.raptor.models.auth.Token;
@@ -54,7 +55,7 @@ public class DispatcherService {
     RaptorConfiguration config;
 
     @Autowired
-    BrokerClient brokerClient;
+    DispatcherTransport transport;
 
     /**
      * @todo rewrite this to use dispatcher
@@ -76,7 +77,7 @@ public class DispatcherService {
             throw new RaptorComponent.ParserException("Device.id is null");
         }
 
-        return String.format(Topics.DEVICE, id);
+        return Topics.device(id);
     }
 
     protected String getStreamTopic(Stream s) {
@@ -91,7 +92,7 @@ public class DispatcherService {
             throw new RaptorComponent.ParserException("Device.id is null");
         }
 
-        return String.format(Topics.STREAM, id, s.name());
+        return Topics.stream(id, s.name());
     }
 
     protected String getActionTopic(Action a) {
@@ -106,11 +107,11 @@ public class DispatcherService {
             throw new RaptorComponent.ParserException("Device.id is null");
         }
 
-        return String.format(Topics.ACTION, id, a.name());
+        return Topics.action(id, a.name());
     }
 
     protected String getAppTopic(App a) {
-        return String.format(Topics.APP, a.getId());
+        return Topics.app(a.getId());
     }
 
     protected String getUserEventsTopic(DeviceContainer c) {
@@ -125,15 +126,15 @@ public class DispatcherService {
             throw new RaptorComponent.ParserException("Device.userId is null");
         }
 
-        return String.format(Topics.USER, userId);
+        return Topics.user(userId);
     }
 
     protected String getUserEventsTopic(User u) {
-        return String.format(Topics.USER, u.getId());
+        return Topics.user(u.getId());
     }
 
     protected String getTokenEventsTopic(Token t) {
-        return String.format(Topics.TOKEN, t.getId().toString());
+        return Topics.token(t.getId().toString());
     }
 
     /**
@@ -142,8 +143,33 @@ public class DispatcherService {
      * @param message
      */
     protected void notifyEvent(String topic, DispatcherPayload message) {
+        notifyEvent(topic, message, encode(message));
+    }
+
+    /**
+     * Encode a payload if needed by the transport
+     *
+     * @param message
+     * @return the encoded payload or null
+     */
+    protected byte[] encode(DispatcherPayload message) {
+        if (!transport.isEncoding()) {
+            return null;
+        }
+        return message.toBytes(getConfiguration().getPayloadFormat());
+    }
+
+    /**
+     * Send an already encoded payload, to reuse it for multiple topics. The
+     * encoded payload is null if the transport does not need it
+     *
+     * @param topic
+     * @param message
+     * @param encoded
+     */
+    protected void notifyEvent(String topic, DispatcherPayload message, byte[] encoded) {
         logger.debug("Notifying {} {}.{}", topic, message.getType(), message.getOp());
-        brokerClient.sendMessage(topic, message.toString());
+        transport.send(topic, message, encoded);
     }
 
     /**
@@ -152,7 +178,7 @@ public class DispatcherService {
      * @param payload
      */
     public void notifyTreeEvent(TreeNode node, DispatcherPayload payload) {
-        String topic = String.format(Topics.TREE, node.getId(), node.getType().name());
+        String topic = Topics.tree(node.getId(), node.getType().name());
         notifyEvent(topic, payload);
     }
 
@@ -175,7 +201,10 @@ public class DispatcherService {
     public void notifyDeviceEvent(Operation op, Device obj) {
         String topic = getEventsTopic(obj);
         DevicePayload payload = new DevicePayload(obj, op);
-        notifyEvent(topic, payload);
+        byte[] encoded = encode(payload);
+        notifyEvent(topic, payload, encoded);
+        // internal subscribers of the device changes skip the data traffic
+        notifyEvent(Topics.lifecycle(obj.id()), payload, encoded);
     }
 
     /**
@@ -208,9 +237,14 @@ public class DispatcherService {
     public void notifyDataEvent(Stream stream, RecordSet record) {
 
         StreamPayload payload = new StreamPayload(stream, Operation.push, record);
+        byte[] encoded = encode(payload);
 
-        notifyEvent(getStreamTopic(stream), payload);
-        notifyEvent(getEventsTopic(stream), payload);
+        if (getConfiguration().isCompactPayload()) {
+            notifyEvent(getStreamTopic(stream), payload.compact());
+        } else {
+            notifyEvent(getStreamTopic(stream), payload, encoded);
+        }
+        notifyEvent(getEventsTopic(stream), payload, encoded);
 
     }
 
@@ -228,9 +262,14 @@ public class DispatcherService {
         }
 
         ActionPayload payload = new ActionPayload(action, op, data);
+        byte[] encoded = encode(payload);
 
-        notifyEvent(getActionTopic(action), payload);
-        notifyEvent(getEventsTopic(action), payload);
+        if (getConfiguration().isCompactPayload()) {
+            notifyEvent(getActionTopic(action), payload.compact());
+        } else {
+            notifyEvent(getActionTopic(action), payload, encoded);
+        }
+        notifyEvent(getEventsTopic(action), payload, encoded);
     }
 
     /**
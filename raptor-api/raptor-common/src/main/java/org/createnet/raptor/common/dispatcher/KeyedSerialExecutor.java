@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.createnet.raptor.common.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Run tasks on a pool of single threaded lanes. Tasks with the same key always
+ * use the same lane and run in submission order. When a lane is full the
+ * submitter waits for space.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class KeyedSerialExecutor {
+
+    final private Logger log = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+
+    final private String name;
+    final private ThreadPoolExecutor[] lanes;
+
+    final private LongAdder blocked = new LongAdder();
+    final private Histogram latency = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000);
+
+    /**
+     * @param name name used for threads and logs
+     * @param lanes amount of lanes
+     * @param queueLength max tasks waiting per lane
+     */
+    public KeyedSerialExecutor(String name, int lanes, int queueLength) {
+
+        this.name = name;
+        this.lanes = new ThreadPoolExecutor[Math.max(1, lanes)];
+
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue(Math.max(1, queueLength)),
+                    new CustomizableThreadFactory(name + "-" + i + "-"),
+                    this::onFullLane
+            );
+        }
+    }
+
+    /**
+     * Run a task on the lane of a key
+     *
+     * @param key ordering key, null uses the first lane
+     * @param task
+     */
+    public void execute(Object key, Runnable task) {
+        ThreadPoolExecutor lane = lanes[key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+        long queuedAt = System.currentTimeMillis();
+        lane.execute(() -> {
+            latency.record(System.currentTimeMillis() - queuedAt);
+            task.run();
+        });
+    }
+
+    /**
+     * Wait for space in a full lane, preserving the tasks order
+     *
+     * @param task
+     * @param lane
+     */
+    protected void onFullLane(Runnable task, ThreadPoolExecutor lane) {
+
+        if (lane.isShutdown()) {
+            log.warn("Task dropped, {} is stopped", name);
+            return;
+        }
+
+        blocked.increment();
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for {}, task dropped", name);
+        }
+    }
+
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            size += lane.getQueue().size();
+        }
+        return size;
+    }
+
+    /**
+     * Stop the lanes, waiting for the queued tasks
+     */
+    public void shutdown() {
+
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("Lane of {} did not terminate, {} tasks not run", name, lane.getQueue().size());
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Collection<Metric<?>> metrics(String prefix) {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>(prefix + ".queue.size", getQueueSize()));
+        metrics.add(new Metric<>(prefix + ".blocked", blocked.sum()));
+        metrics.addAll(latency.metrics(prefix + ".latency"));
+        return metrics;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.createnet.raptor.common.metrics.Histogram;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.PayloadHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Registry of the handlers of the inbound dispatcher messages, indexed by the
+ * entity types they declare.
+ *
+ * Encoded payloads are fully parsed only if a handler accepts their type and
+ * operation. Handlers run in registration order on the caller thread, or on a
+ * bounded pool if they opt into parallel execution. A failing handler does
+ * not affect the others.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class MessageHandlerRegistry implements PublicMetrics, DisposableBean {
+
+    final private Logger log = LoggerFactory.getLogger(MessageHandlerRegistry.class);
+
+    private class Registration {
+
+        final RaptorMessageHandler handler;
+        final String name;
+        final LongAdder handled = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final Histogram latency = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000);
+
+        Registration(RaptorMessageHandler handler) {
+            this.handler = handler;
+            this.name = ClassUtils.getUserClass(handler).getSimpleName();
+        }
+
+        boolean accepts(Operation op) {
+            return op == null || handler.getOperations().contains(op);
+        }
+
+        void handle(DispatcherPayload payload, MessageHeaders headers) {
+            long start = System.currentTimeMillis();
+            try {
+                handler.handle(payload, headers);
+                handled.increment();
+            } catch (Exception ex) {
+                failed.increment();
+                log.error("Handler {} failed on {} {}: {}", name, payload.getType(), payload.getOp(), ex.getMessage(), ex);
+            } finally {
+                latency.record(System.currentTimeMillis() - start);
+            }
+        }
+
+    }
+
+    final private List<Registration> registrations = new CopyOnWriteArrayList();
+    final private Map<EntityType, List<Registration>> index = new EnumMap(EntityType.class);
+    final private ThreadPoolExecutor pool;
+
+    final private LongAdder skipped = new LongAdder();
+    final private LongAdder invalid = new LongAdder();
+
+    public MessageHandlerRegistry(DispatcherConfiguration.ConsumerConfiguration settings) {
+
+        for (EntityType type : EntityType.values()) {
+            index.put(type, new CopyOnWriteArrayList());
+        }
+
+        pool = new ThreadPoolExecutor(
+                Math.max(1, settings.getHandlerPoolSize()), Math.max(1, settings.getHandlerPoolSize()),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(Math.max(1, settings.getHandlerQueueLength())),
+                new CustomizableThreadFactory("message-handler-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Register a handler for the entity types it declares
+     *
+     * @param handler
+     */
+    public synchronized void registerHandler(RaptorMessageHandler handler) {
+
+        for (Registration r : registrations) {
+            if (r.handler == handler) {
+                return;
+            }
+        }
+
+        Registration registration = new Registration(handler);
+        registrations.add(registration);
+        handler.getTypes().forEach((type) -> index.get(type).add(registration));
+
+        log.debug("Registered handler {} for {}", registration.name, handler.getTypes());
+    }
+
+    public synchronized void unregisterHandler(RaptorMessageHandler handler) {
+        registrations.removeIf((r) -> r.handler == handler);
+        index.values().forEach((list) -> list.removeIf((r) -> r.handler == handler));
+    }
+
+    /**
+     * Return true if any handler accepts the type and operation
+     *
+     * @param type
+     * @param op
+     * @return
+     */
+    public boolean accepts(EntityType type, Operation op) {
+        for (Registration r : index.get(type)) {
+            if (r.accepts(op)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handle an encoded payload, parsing it only if a handler accepts it
+     *
+     * @param raw
+     * @param headers
+     */
+    public void handle(byte[] raw, MessageHeaders headers) {
+
+        PayloadHeader header;
+        try {
+            header = PayloadHeader.read(raw);
+        } catch (RuntimeException ex) {
+            invalid.increment();
+            log.debug("Skip invalid payload: {}", ex.getMessage());
+            return;
+        }
+
+        if (!accepts(header.getType(), header.getOp())) {
+            skipped.increment();
+            return;
+        }
+
+        DispatcherPayload payload;
+        try {
+            payload = DispatcherPayload.parse(raw);
+        } catch (RuntimeException ex) {
+            invalid.increment();
+            log.debug("Skip invalid {} payload: {}", header.getType(), ex.getMessage());
+            return;
+        }
+
+        handle(payload, headers);
+    }
+
+    /**
+     * Handle a parsed payload
+     *
+     * @param payload
+     * @param headers
+     */
+    public void handle(DispatcherPayload payload, MessageHeaders headers) {
+
+        List<Registration> matches = index.get(payload.getType());
+        boolean matched = false;
+
+        for (Registration r : matches) {
+            if (!r.accepts(payload.getOp())) {
+                continue;
+            }
+            matched = true;
+            if (r.handler.isParallel()) {
+                pool.execute(() -> r.handle(payload, headers));
+            } else {
+                r.handle(payload, headers);
+            }
+        }
+
+        if (!matched) {
+            skipped.increment();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Handlers pool did not terminate, {} calls dropped", pool.getQueue().size());
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("dispatcher.handlers.skipped", skipped.sum()));
+        metrics.add(new Metric<>("dispatcher.handlers.invalid", invalid.sum()));
+        metrics.add(new Metric<>("dispatcher.handlers.pool.queue.size", pool.getQueue().size()));
+        for (Registration r : registrations) {
+            String prefix = "dispatcher.handler." + r.name;
+            metrics.add(new Metric<>(prefix + ".handled", r.handled.sum()));
+            metrics.add(new Metric<>(prefix + ".failed", r.failed.sum()));
+            metrics.addAll(r.latency.metrics(prefix + ".latency"));
+        }
+        return metrics;
+    }
+
+}
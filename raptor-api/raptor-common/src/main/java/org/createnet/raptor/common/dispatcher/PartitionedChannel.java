@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.AbstractDispatcher;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+
+/**
+ * Channel handing messages to a pool of single threaded partitions. Messages
+ * with the same key, by default the id in the MQTT topic, always use the same
+ * partition and are handled in order. When a partition is full the sender
+ * waits for space, slowing down the MQTT client.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class PartitionedChannel extends AbstractSubscribableChannel implements PublicMetrics, DisposableBean {
+
+    final private Logger log = LoggerFactory.getLogger(PartitionedChannel.class);
+
+    final private String name;
+    final private Function<Message<?>, Object> keyFunction;
+    final private KeyedSerialExecutor partitions;
+    final private PartitionedDispatcher dispatcher = new PartitionedDispatcher();
+
+    final private LongAdder handled = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+
+    private class PartitionedDispatcher extends AbstractDispatcher {
+
+        @Override
+        public boolean dispatch(Message<?> message) {
+
+            partitions.execute(keyFunction.apply(message), () -> {
+                try {
+                    tryOptimizedDispatch(message);
+                    handled.increment();
+                } catch (Exception ex) {
+                    failed.increment();
+                    log.error("Failed to handle message on {}: {}", name, ex.getMessage(), ex);
+                }
+            });
+
+            return true;
+        }
+
+    }
+
+    /**
+     * @param name name used for threads and metrics
+     * @param partitions amount of partitions
+     * @param queueLength max messages waiting per partition
+     */
+    public PartitionedChannel(String name, int partitions, int queueLength) {
+        this(name, partitions, queueLength, PartitionedChannel::topicKey);
+    }
+
+    public PartitionedChannel(String name, int partitions, int queueLength, Function<Message<?>, Object> keyFunction) {
+
+        this.name = name;
+        this.keyFunction = keyFunction;
+        this.partitions = new KeyedSerialExecutor(name, partitions, queueLength);
+
+        setBeanName(name);
+    }
+
+    /**
+     * Return the id segment of the MQTT topic of a message, as in
+     * `device/{id}` or `stream/{id}/{name}`
+     *
+     * @param message
+     * @return
+     */
+    public static Object topicKey(Message<?> message) {
+        Object topic = message.getHeaders().get(MqttHeaders.TOPIC);
+        if (topic == null) {
+            return null;
+        }
+        String[] parts = topic.toString().split("/", 3);
+        return parts.length > 1 ? parts[1] : parts[0];
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public int getQueueSize() {
+        return partitions.getQueueSize();
+    }
+
+    @Override
+    public void destroy() {
+        partitions.shutdown();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        String prefix = "mqtt.consumer." + name;
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>(prefix + ".handled", handled.sum()));
+        metrics.add(new Metric<>(prefix + ".failed", failed.sum()));
+        metrics.addAll(partitions.metrics(prefix));
+        return metrics;
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package org.createnet.raptor.common.dispatcher;
 
+import java.util.EnumSet;
+import java.util.Set;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.payload.DispatcherPayload;
 import org.springframework.messaging.MessageHeaders;
 
@@ -23,5 +27,35 @@ import org.springframework.messaging.MessageHeaders;
  * @author Luca Capra <lcapra@fbk.eu>
  */
 public interface RaptorMessageHandler {
+
     public void handle(DispatcherPayload dispatcherPayload, MessageHeaders headers);
+
+    /**
+     * Entity types of the payloads to handle, all by default
+     *
+     * @return
+     */
+    default public Set<EntityType> getTypes() {
+        return EnumSet.allOf(EntityType.class);
+    }
+
+    /**
+     * Operations of the payloads to handle, all by default
+     *
+     * @return
+     */
+    default public Set<Operation> getOperations() {
+        return EnumSet.allOf(Operation.class);
+    }
+
+    /**
+     * Run on the shared handlers pool, concurrently with the other handlers
+     * and without ordering guarantees
+     *
+     * @return
+     */
+    default public boolean isParallel() {
+        return false;
+    }
+
 }
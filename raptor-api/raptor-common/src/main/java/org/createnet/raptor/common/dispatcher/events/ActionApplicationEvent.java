@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class ActionApplicationEvent extends ApplicationEvent {
+public class ActionApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final ActionEvent actionEvent;
     
@@ -34,5 +34,10 @@ public class ActionApplicationEvent extends ApplicationEvent {
     public ActionEvent getActionEvent() {
         return actionEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return actionEvent.getDevice() == null ? null : actionEvent.getDevice().id();
+    }
+
 }
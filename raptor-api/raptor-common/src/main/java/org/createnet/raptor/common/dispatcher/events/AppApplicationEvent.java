@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class AppApplicationEvent extends ApplicationEvent {
+public class AppApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final AppEvent appEvent;
     
@@ -34,5 +34,10 @@ public class AppApplicationEvent extends ApplicationEvent {
     public AppEvent getAppEvent() {
         return appEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return appEvent.getApp() == null ? null : appEvent.getApp().getId();
+    }
+
 }
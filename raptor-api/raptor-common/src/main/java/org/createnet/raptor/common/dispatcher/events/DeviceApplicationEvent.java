@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class DeviceApplicationEvent extends ApplicationEvent {
+public class DeviceApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final DeviceEvent deviceEvent;
     
@@ -34,5 +34,10 @@ public class DeviceApplicationEvent extends ApplicationEvent {
     public DeviceEvent getDeviceEvent() {
         return deviceEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return deviceEvent.getDevice() == null ? null : deviceEvent.getDevice().id();
+    }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.events;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.createnet.raptor.common.dispatcher.KeyedSerialExecutor;
+import org.createnet.raptor.common.dispatcher.events.listener.SynchronousApplicationListener;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+
+/**
+ * Dispatch the Raptor application events to their listeners on a pool of
+ * single threaded lanes, so publishers do not wait for the listeners.
+ *
+ * Events sharing the same ordering key, eg. the device id, always use the same
+ * lane and are delivered in publishing order. When a lane is full the
+ * publisher waits for space. Other events, as the Spring context events, and
+ * the listeners implementing SynchronousApplicationListener are delivered
+ * synchronously.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class LaneEventMulticaster extends SimpleApplicationEventMulticaster implements PublicMetrics, DisposableBean {
+
+    final private Logger log = LoggerFactory.getLogger(LaneEventMulticaster.class);
+
+    final private KeyedSerialExecutor lanes;
+
+    // set on lane threads, events published by a listener are delivered inline
+    // to avoid waiting on a full lane from the lane itself
+    final private ThreadLocal<Boolean> onLane = ThreadLocal.withInitial(() -> false);
+
+    final private LongAdder dispatched = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+
+    public LaneEventMulticaster(DispatcherConfiguration.EventsConfiguration settings) {
+
+        lanes = new KeyedSerialExecutor("event-lane", settings.getLanes(), settings.getQueueLength());
+
+        setErrorHandler((ex) -> {
+            failed.increment();
+            log.error("Event listener failure: {}", ex.getMessage(), ex);
+        });
+
+        log.info("Dispatching application events on {} lanes", lanes.getLanes());
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+
+        if (!(event instanceof OrderedApplicationEvent) || onLane.get()) {
+            super.multicastEvent(event, eventType);
+            return;
+        }
+
+        ResolvableType type = eventType == null ? ResolvableType.forInstance(event) : eventType;
+
+        List<ApplicationListener<?>> queued = new ArrayList();
+        for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+            if (listener instanceof SynchronousApplicationListener) {
+                invokeListener(listener, event);
+            } else {
+                queued.add(listener);
+            }
+        }
+
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        lanes.execute(((OrderedApplicationEvent) event).getOrderingKey(), () -> {
+            onLane.set(true);
+            queued.forEach((listener) -> invokeListener(listener, event));
+            dispatched.increment();
+        });
+    }
+
+    public int getQueueSize() {
+        return lanes.getQueueSize();
+    }
+
+    @Override
+    public void destroy() {
+        lanes.shutdown();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("events.dispatched", dispatched.sum()));
+        metrics.add(new Metric<>("events.failed", failed.sum()));
+        metrics.addAll(lanes.metrics("events"));
+        return metrics;
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.events;
+
+/**
+ * An application event dispatched in order with the other events sharing the
+ * same key
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public interface OrderedApplicationEvent {
+
+    /**
+     * Return the key of the entity the event belongs to, eg. the device id
+     *
+     * @return the key or null if not available
+     */
+    public String getOrderingKey();
+
+}
@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class StreamApplicationEvent extends ApplicationEvent {
+public class StreamApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final DataEvent dataEvent;
     
@@ -34,5 +34,10 @@ public class StreamApplicationEvent extends ApplicationEvent {
     public DataEvent getDataEvent() {
         return dataEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return dataEvent.getDevice() == null ? null : dataEvent.getDevice().id();
+    }
+
 }
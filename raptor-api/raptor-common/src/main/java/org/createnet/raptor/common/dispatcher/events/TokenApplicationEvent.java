@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class TokenApplicationEvent extends ApplicationEvent {
+public class TokenApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final TokenEvent tokenEvent;
     
@@ -34,5 +34,10 @@ public class TokenApplicationEvent extends ApplicationEvent {
     public TokenEvent getTokenEvent() {
         return tokenEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return tokenEvent.getToken() == null || tokenEvent.getToken().getId() == null ? null : tokenEvent.getToken().getId().toString();
+    }
+
 }
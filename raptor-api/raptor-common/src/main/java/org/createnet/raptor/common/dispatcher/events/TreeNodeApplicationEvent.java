@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class TreeNodeApplicationEvent extends ApplicationEvent {
+public class TreeNodeApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final TreeNodeEvent treeNodeEvent;
     
@@ -34,5 +34,10 @@ public class TreeNodeApplicationEvent extends ApplicationEvent {
     public TreeNodeEvent getTreeNodeEvent() {
         return treeNodeEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return treeNodeEvent.getNode() == null ? null : treeNodeEvent.getNode().getId();
+    }
+
 }
@@ -22,7 +22,7 @@ import org.springframework.context.ApplicationEvent;
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class UserApplicationEvent extends ApplicationEvent {
+public class UserApplicationEvent extends ApplicationEvent implements OrderedApplicationEvent {
 
     private final UserEvent userEvent;
     
@@ -34,5 +34,10 @@ public class UserApplicationEvent extends ApplicationEvent {
     public UserEvent getUserEvent() {
         return userEvent;
     }
-    
+
+    @Override
+    public String getOrderingKey() {
+        return userEvent.getUser() == null ? null : userEvent.getUser().getId();
+    }
+
 }
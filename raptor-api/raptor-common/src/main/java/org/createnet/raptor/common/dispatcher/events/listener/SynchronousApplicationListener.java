@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.events.listener;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Listener always invoked on the publishing thread, also when the events are
+ * dispatched on lanes. Used by caches and security checks which must be
+ * updated before the request completes.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ * @param <E>
+ */
+public interface SynchronousApplicationListener<E extends ApplicationEvent> extends ApplicationListener<E> {
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.transport;
+
+import org.createnet.raptor.models.payload.DispatcherPayload;
+
+/**
+ * Delivers the events of the DispatcherService to their subscribers. The
+ * implementation is selected by `dispatcher.protocol`
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public interface DispatcherTransport {
+
+    final public static String MQTT = "mqtt";
+    final public static String LOCAL = "local";
+
+    /**
+     * Return true if the transport needs the encoded payload
+     *
+     * @return
+     */
+    public boolean isEncoding();
+
+    /**
+     * Deliver a payload
+     *
+     * @param topic
+     * @param payload
+     * @param encoded the encoded payload, null if not encoding
+     */
+    public void send(String topic, DispatcherPayload payload, byte[] encoded);
+
+}
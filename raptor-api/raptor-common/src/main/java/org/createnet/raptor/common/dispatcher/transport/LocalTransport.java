@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.transport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.createnet.raptor.common.dispatcher.MessageHandlerRegistry;
+import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Deliver the events in process to the MessageHandlerRegistry, without
+ * encoding them. Events are queued on a lock-free queue and handled in order
+ * by a single thread, only for topics matching a local subscription. Events
+ * exceeding the queue length are dropped and counted. A subscription may
+ * target its own handler instead of the registry.
+ *
+ * External subscribers are still served by forwarding the events to another
+ * transport, if set.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class LocalTransport implements DispatcherTransport, PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(LocalTransport.class);
+
+    private static class Event {
+
+        final String topic;
+        final DispatcherPayload payload;
+
+        Event(String topic, DispatcherPayload payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+
+    final private MessageHandlerRegistry handlers;
+    final private DispatcherTransport forward;
+    final private int queueLength;
+
+    private static class Subscription {
+
+        final String[] filter;
+        // null to deliver to the registry
+        final RaptorMessageHandler handler;
+
+        Subscription(String filter, RaptorMessageHandler handler) {
+            this.filter = filter.split("/");
+            this.handler = handler;
+        }
+    }
+
+    final private List<Subscription> subscriptions = new CopyOnWriteArrayList();
+    final private Queue<Event> queue = new ConcurrentLinkedQueue();
+    final private AtomicInteger size = new AtomicInteger();
+
+    private Thread worker;
+    private volatile boolean running = false;
+
+    final private LongAdder delivered = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+    final private LongAdder dropped = new LongAdder();
+
+    /**
+     * @param handlers local handlers
+     * @param forward transport for external subscribers, may be null
+     * @param queueLength max events waiting for the local handlers
+     */
+    public LocalTransport(MessageHandlerRegistry handlers, DispatcherTransport forward, int queueLength) {
+        this.handlers = handlers;
+        this.forward = forward;
+        this.queueLength = Math.max(1, queueLength);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::run, "dispatcher-local");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Local transport stopped, {} events not delivered", queue.size());
+        }
+    }
+
+    /**
+     * Deliver the events of the topics matching an MQTT filter to the local
+     * handlers
+     *
+     * @param filter
+     */
+    public void subscribe(String filter) {
+        subscribe(filter, null);
+    }
+
+    /**
+     * Deliver the events of the topics matching an MQTT filter to a handler,
+     * bypassing the registry
+     *
+     * @param filter
+     * @param handler handler of the events, null for the registry
+     */
+    public void subscribe(String filter, RaptorMessageHandler handler) {
+        subscriptions.add(new Subscription(filter, handler));
+    }
+
+    public List<String> getSubscriptions() {
+        List<String> list = new ArrayList();
+        subscriptions.forEach((s) -> list.add(String.join("/", s.filter)));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Return true if the events are also sent to another transport
+     *
+     * @return
+     */
+    public boolean isForwarding() {
+        return forward != null;
+    }
+
+    @Override
+    public boolean isEncoding() {
+        return forward != null && forward.isEncoding();
+    }
+
+    @Override
+    public void send(String topic, DispatcherPayload payload, byte[] encoded) {
+
+        if (forward != null) {
+            forward.send(topic, payload, encoded);
+        }
+
+        if (!isSubscribed(topic)) {
+            return;
+        }
+
+        if (size.incrementAndGet() > queueLength) {
+            size.decrementAndGet();
+            dropped.increment();
+            log.warn("Local queue full, event dropped [topic={}]", topic);
+            return;
+        }
+
+        queue.offer(new Event(topic, payload));
+        LockSupport.unpark(worker);
+    }
+
+    protected boolean isSubscribed(String topic) {
+        if (subscriptions.isEmpty()) {
+            return false;
+        }
+        String[] levels = topic.split("/");
+        for (Subscription subscription : subscriptions) {
+            if (matches(subscription.filter, levels)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match a topic against an MQTT filter, supporting `+` and `#`
+     *
+     * @param filter
+     * @param levels
+     * @return
+     */
+    protected static boolean matches(String[] filter, String[] levels) {
+        for (int i = 0; i < filter.length; i++) {
+            if (filter[i].equals("#")) {
+                return true;
+            }
+            if (i >= levels.length) {
+                return false;
+            }
+            if (!filter[i].equals("+") && !filter[i].equals(levels[i])) {
+                return false;
+            }
+        }
+        return filter.length == levels.length;
+    }
+
+    protected void run() {
+        while (running || !queue.isEmpty()) {
+
+            Event event = queue.poll();
+            if (event == null) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+
+            size.decrementAndGet();
+            try {
+                deliver(event);
+                delivered.increment();
+            } catch (Exception ex) {
+                failed.increment();
+                log.error("Failed to handle local event on {}: {}", event.topic, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Deliver an event to the handlers of the matching subscriptions, the
+     * registry at most once
+     *
+     * @param event
+     */
+    protected void deliver(Event event) {
+
+        MessageHeaders headers = new MessageHeaders(Collections.singletonMap(MqttHeaders.TOPIC, event.topic));
+        String[] levels = event.topic.split("/");
+        boolean registry = false;
+
+        for (Subscription subscription : subscriptions) {
+            if (!matches(subscription.filter, levels)) {
+                continue;
+            }
+            if (subscription.handler == null) {
+                if (!registry) {
+                    registry = true;
+                    handlers.handle(event.payload, headers);
+                }
+            } else {
+                subscription.handler.handle(event.payload, headers);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("dispatcher.local.queue.size", size.get()));
+        metrics.add(new Metric<>("dispatcher.local.delivered", delivered.sum()));
+        metrics.add(new Metric<>("dispatcher.local.failed", failed.sum()));
+        metrics.add(new Metric<>("dispatcher.local.dropped", dropped.sum()));
+        return metrics;
+    }
+
+}
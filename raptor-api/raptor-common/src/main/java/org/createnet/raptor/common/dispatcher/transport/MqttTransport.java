@@ -13,30 +13,32 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.createnet.raptor.common.dispatcher;
+package org.createnet.raptor.common.dispatcher.transport;
 
-import java.util.ArrayList;
-import java.util.List;
+import org.createnet.raptor.common.dispatcher.BrokerClient;
 import org.createnet.raptor.models.payload.DispatcherPayload;
-import org.springframework.messaging.MessageHeaders;
 
 /**
+ * Publish the events to the MQTT broker
  *
  * @author Luca Capra <lcapra@fbk.eu>
  */
-public class RaptorMessageHandlerWrapper {
-    
-    final private List<RaptorMessageHandler> handlers = new ArrayList();
-    
-    public void registerHandler(RaptorMessageHandler handler) {
-        if(!handlers.contains(handler))
-            handlers.add(handler);
+public class MqttTransport implements DispatcherTransport {
+
+    final private BrokerClient brokerClient;
+
+    public MqttTransport(BrokerClient brokerClient) {
+        this.brokerClient = brokerClient;
     }
-    
-    public void handle(DispatcherPayload dispatcherPayload, MessageHeaders headers) {
-        handlers.forEach((h) -> {
-            h.handle(dispatcherPayload, headers);
-        });
+
+    @Override
+    public boolean isEncoding() {
+        return true;
+    }
+
+    @Override
+    public void send(String topic, DispatcherPayload payload, byte[] encoded) {
+        brokerClient.sendMessage(topic, encoded);
     }
 
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Lock free histogram with fixed upper bounds, exported as actuator metrics
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class Histogram {
+
+    final private long[] bounds;
+    final private LongAdder[] buckets;
+    final private LongAdder count = new LongAdder();
+    final private LongAdder sum = new LongAdder();
+    final private LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param bounds inclusive upper bound of each bucket, in ascending order.
+     * Values above the last bound are counted in an overflow bucket
+     */
+    public Histogram(long... bounds) {
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) sum.sum() / c;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Export the histogram as a list of metrics
+     *
+     * @param prefix name prefix of the metrics
+     * @return
+     */
+    public Collection<Metric<?>> metrics(String prefix) {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>(prefix + ".count", getCount()));
+        metrics.add(new Metric<>(prefix + ".mean", getMean()));
+        metrics.add(new Metric<>(prefix + ".max", getMax()));
+        for (int i = 0; i < bounds.length; i++) {
+            metrics.add(new Metric<>(prefix + ".le." + bounds[i], buckets[i].sum()));
+        }
+        metrics.add(new Metric<>(prefix + ".gt." + bounds[bounds.length - 1], buckets[bounds.length].sum()));
+        return metrics;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Position of a keyset paginated read over stream records, ordered by
+ * (timestamp, id). Each page starts after the last record of the previous one,
+ * so the cost of a page does not grow with its depth as with skip.
+ *
+ * The token is an opaque, url safe encoding of the sort direction and of the
+ * last record position.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class Continuation {
+
+    final private Sort.Direction direction;
+    final private Date timestamp;
+    final private String id;
+
+    protected Continuation(Sort.Direction direction, Date timestamp, String id) {
+        this.direction = direction;
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * Start reading from the first record
+     *
+     * @param direction
+     * @return
+     */
+    public static Continuation first(Sort.Direction direction) {
+        return new Continuation(direction == null ? Sort.Direction.ASC : direction, null, null);
+    }
+
+    /**
+     * Restore a position from a token
+     *
+     * @param token
+     * @return
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static Continuation parse(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed continuation token");
+            }
+            return new Continuation(
+                    "d".equals(parts[0]) ? Sort.Direction.DESC : Sort.Direction.ASC,
+                    new Date(Long.parseLong(parts[1])),
+                    parts[2]
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid continuation token", ex);
+        }
+    }
+
+    /**
+     * Return the position following a record
+     *
+     * @param timestamp
+     * @param id
+     * @return
+     */
+    public Continuation next(Date timestamp, String id) {
+        return new Continuation(direction, timestamp, id);
+    }
+
+    public String toToken() {
+        String raw = (direction == Sort.Direction.DESC ? "d" : "a") + ":" + timestamp.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isFirst() {
+        return timestamp == null;
+    }
+
+    /**
+     * Return the criteria selecting the records after this position, or null
+     * on the first page
+     *
+     * @return
+     */
+    public Criteria getCriteria() {
+
+        if (isFirst()) {
+            return null;
+        }
+
+        if (direction == Sort.Direction.DESC) {
+            return new Criteria().orOperator(
+                    Criteria.where("timestamp").lt(timestamp),
+                    Criteria.where("timestamp").is(timestamp).and("id").lt(id)
+            );
+        }
+
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").gt(timestamp),
+                Criteria.where("timestamp").is(timestamp).and("id").gt(id)
+        );
+    }
+
+    public Sort getSort() {
+        return new Sort(direction, "timestamp", "id");
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+}
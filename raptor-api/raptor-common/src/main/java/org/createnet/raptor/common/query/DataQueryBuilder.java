@@ -17,11 +17,13 @@ package org.createnet.raptor.common.query;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.createnet.raptor.models.query.AggregateQuery;
 import org.createnet.raptor.models.query.BoolQuery;
 import org.createnet.raptor.models.query.DataQuery;
 import org.createnet.raptor.models.query.GeoQuery;
@@ -32,14 +34,18 @@ import org.createnet.raptor.models.query.TextQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.geo.Circle;
 import org.springframework.data.geo.Distance;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.CriteriaDefinition;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.TextCriteria;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.mongodb.BasicDBObject;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.MapPath;
@@ -75,9 +81,143 @@ public class DataQueryBuilder extends BaseQueryBuilder {
     }
 
     public Query getQuery() {
-
         Query q = new Query();
         q.with(this.getPaging());
+        return build(q);
+    }
+
+    /**
+     * Return the query for the records following a keyset position, sorted by
+     * (timestamp, id)
+     *
+     * @param continuation
+     * @return
+     */
+    public Query getQuery(Continuation continuation) {
+
+        Query q = new Query();
+        q.with(continuation.getSort());
+
+        if (!continuation.isFirst()) {
+            addCriteria(continuation.getCriteria());
+        }
+
+        return build(q);
+    }
+
+    /**
+     * Return the aggregation pipeline of the query: the matching records are
+     * grouped in time buckets, and by device if requested, computing the
+     * operators of each channel. Percentiles values are pushed as
+     * `c{channel}_values` to be computed by the caller, since MongoDB has no
+     * percentile operator, the caller bounds them to
+     * AggregateQuery.MAX_PERCENTILE_VALUES records. Up to MAX_BUCKETS + 1
+     * buckets are returned, so the caller can detect a truncated result.
+     *
+     * @return
+     */
+    public Aggregation getAggregation() {
+
+        AggregateQuery aggregate = query.getAggregate();
+        List<AggregationOperation> pipeline = new ArrayList();
+
+        if (build(new Query()) != null) {
+            pipeline.add(Aggregation.match(new Criteria().andOperator(getCriteria())));
+        }
+
+        boolean ordered = aggregate.getChannels().values().stream().anyMatch((ops) -> ops.contains(AggregateQuery.Operator.first.name())
+                || ops.contains(AggregateQuery.Operator.last.name()));
+        if (ordered) {
+            pipeline.add(Aggregation.sort(Sort.Direction.ASC, "timestamp"));
+        }
+
+        BasicDBObject id = new BasicDBObject();
+        if (aggregate.getInterval() > 0) {
+            // milliseconds since epoch, truncated to the bucket start
+            BasicDBObject millis = new BasicDBObject("$subtract", Arrays.asList("$timestamp", new Date(0)));
+            BasicDBObject mod = new BasicDBObject("$mod", Arrays.asList(millis, aggregate.getInterval()));
+            id.append("t", new BasicDBObject("$subtract", Arrays.asList(millis, mod)));
+        }
+        if (aggregate.isByDevice()) {
+            id.append("d", "$deviceId");
+        }
+
+        BasicDBObject group = new BasicDBObject("_id", id);
+        group.append("_t", new BasicDBObject("$min", "$timestamp"));
+
+        int i = 0;
+        for (Map.Entry<String, List<String>> en : aggregate.getChannels().entrySet()) {
+
+            String field = "$channels." + en.getKey();
+
+            int j = 0;
+            boolean values = false;
+            for (String operator : en.getValue()) {
+
+                if (AggregateQuery.percentile(operator) != null) {
+                    values = true;
+                } else if (AggregateQuery.Operator.count.name().equals(operator)) {
+                    BasicDBObject exists = new BasicDBObject("$gt", Arrays.asList(field, null));
+                    group.append(getAggregateField(i, j), new BasicDBObject("$sum", new BasicDBObject("$cond", Arrays.asList(exists, 1, 0))));
+                } else {
+                    group.append(getAggregateField(i, j), new BasicDBObject("$" + operator, field));
+                }
+
+                j++;
+            }
+
+            if (values) {
+                group.append(getAggregateValuesField(i), new BasicDBObject("$push", field));
+            }
+
+            i++;
+        }
+
+        pipeline.add((context) -> new BasicDBObject("$group", group));
+
+        BasicDBObject sort = new BasicDBObject();
+        if (aggregate.getInterval() > 0) {
+            sort.append("_id.t", 1);
+        }
+        if (aggregate.isByDevice()) {
+            sort.append("_id.d", 1);
+        }
+        if (!sort.isEmpty()) {
+            pipeline.add((context) -> new BasicDBObject("$sort", sort));
+        }
+
+        pipeline.add(Aggregation.limit(AggregateQuery.MAX_BUCKETS + 1));
+
+        Aggregation aggregation = Aggregation.newAggregation(pipeline)
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        log.debug("Mongodb aggregation: {}", aggregation);
+
+        return aggregation;
+    }
+
+    /**
+     * Return the name of the grouped field of a channel operator
+     *
+     * @param channel position of the channel in the aggregate query
+     * @param operator position of the operator in the channel list
+     * @return
+     */
+    public static String getAggregateField(int channel, int operator) {
+        return "c" + channel + "_" + operator;
+    }
+
+    /**
+     * Return the name of the grouped field with the values of a channel
+     *
+     * @param channel position of the channel in the aggregate query
+     * @return
+     */
+    public static String getAggregateValuesField(int channel) {
+        return "c" + channel + "_values";
+    }
+
+    protected Query build(Query q) {
 
         if (query.getUserId() != null) {
             addCriteria(Criteria.where("userId").is(query.getUserId()));
@@ -91,6 +231,10 @@ public class DataQueryBuilder extends BaseQueryBuilder {
             addCriteria(Criteria.where("deviceId").is(query.getDeviceId()));
         }
 
+        if (query.getDeviceIds() != null) {
+            addCriteria(Criteria.where("deviceId").in(query.getDeviceIds()));
+        }
+
         if (!query.getTimestamp().isEmpty()) {
             // between
             if (query.getTimestamp().getBetween()[0] != null && query.getTimestamp().getBetween()[1] != null) {
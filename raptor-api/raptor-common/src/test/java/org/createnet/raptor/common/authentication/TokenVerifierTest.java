@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.auth.Role;
+import org.createnet.raptor.models.auth.StaticGroup;
+import org.createnet.raptor.models.auth.Token;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.payload.TokenPayload;
+import org.createnet.raptor.models.payload.UserPayload;
+import org.createnet.raptor.sdk.exception.AuthenticationFailedException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class TokenVerifierTest {
+
+    final private String secret = "test-secret";
+
+    private PrincipalCache principalCache;
+    private TokenVerifier verifier;
+    private User user;
+
+    @Before
+    public void setUp() {
+
+        RaptorConfiguration config = new RaptorConfiguration();
+        config.getAuth().setSecret(secret);
+        config.getAuth().setLocalVerification(true);
+
+        principalCache = new PrincipalCache();
+        ReflectionTestUtils.setField(principalCache, "config", config);
+        principalCache.init();
+
+        verifier = new TokenVerifier();
+        ReflectionTestUtils.setField(verifier, "config", config);
+        ReflectionTestUtils.setField(verifier, "principalCache", principalCache);
+        verifier.init();
+
+        user = new User();
+        user.setId("user-1");
+        user.setUsername("user1");
+        user.addRole(new Role(StaticGroup.admin));
+        principalCache.putUser(user);
+    }
+
+    protected String sign(String key, String claims) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] signature = mac.doFinal((header + "." + payload).getBytes(StandardCharsets.US_ASCII));
+        return header + "." + payload + "." + encoder.encodeToString(signature);
+    }
+
+    protected String token(long expires) throws Exception {
+        return sign(secret, "{\"sub\":\"user1\",\"userId\":\"user-1\",\"exp\":" + expires + "}");
+    }
+
+    protected long inOneHour() {
+        return System.currentTimeMillis() / 1000 + 3600;
+    }
+
+    protected void assertRejected(String token) {
+        try {
+            verifier.verify(token);
+            Assert.fail("Token should be rejected");
+        } catch (AuthenticationFailedException ex) {
+        }
+    }
+
+    @Test
+    public void verifySignature() throws Exception {
+
+        User verified = verifier.verify(token(inOneHour()));
+        Assert.assertNotNull(verified);
+        Assert.assertEquals("user-1", verified.getId());
+        Assert.assertTrue(verified.isAdmin());
+
+        // left to the remote login
+        Assert.assertNull(verifier.verify(sign("another-secret", "{\"sub\":\"user1\",\"userId\":\"user-1\"}")));
+        Assert.assertNull(verifier.verify(sign(secret, "{\"sub\":\"user1\"}")));
+        Assert.assertNull(verifier.verify("opaque-token"));
+    }
+
+    @Test
+    public void rejectExpired() throws Exception {
+        assertRejected(token(System.currentTimeMillis() / 1000 - 10));
+    }
+
+    @Test
+    public void rejectRevokedToken() throws Exception {
+
+        String token = token(inOneHour());
+        Assert.assertNotNull(verifier.verify(token));
+
+        Token t = new Token();
+        t.setToken(token);
+        t.setEnabled(false);
+        verifier.handle(new TokenPayload(t, Operation.update), null);
+
+        assertRejected(token);
+    }
+
+    @Test
+    public void rejectRevokedUser() throws Exception {
+
+        String token = token(inOneHour());
+        Assert.assertNotNull(verifier.verify(token));
+
+        User disabled = new User(user);
+        disabled.setId(user.getId());
+        disabled.setEnabled(false);
+        verifier.handle(new UserPayload(disabled, Operation.update), null);
+        assertRejected(token);
+
+        verifier.handle(new UserPayload(user, Operation.update), null);
+        Assert.assertNotNull(verifier.verify(token));
+
+        verifier.handle(new UserPayload(user, Operation.delete), null);
+        assertRejected(token);
+    }
+
+    @Test
+    public void rejectDisabledUser() throws Exception {
+        user.setEnabled(false);
+        assertRejected(token(inOneHour()));
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class ExpiringCacheTest {
+
+    @Test
+    public void expire() throws InterruptedException {
+
+        ExpiringCache<String, String> cache = new ExpiringCache(10, 1000);
+        cache.put("a", "1", 20);
+        cache.put("b", "2");
+
+        Assert.assertEquals("1", cache.get("a"));
+
+        Thread.sleep(50);
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("2", cache.get("b"));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache(100, 60000);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+
+        // keep the first entry in use
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+
+        cache.put(100, 100);
+
+        Assert.assertTrue(cache.size() <= 100);
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        Assert.assertEquals(Integer.valueOf(100), cache.get(100));
+        Assert.assertNull(cache.get(1));
+        Assert.assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    public void invalidate() {
+
+        ExpiringCache<String, String> cache = new ExpiringCache(10, 60000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "2");
+
+        cache.invalidate("a");
+        cache.invalidateIf((v) -> v.equals("2"));
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(3, cache.getInvalidations());
+    }
+
+}
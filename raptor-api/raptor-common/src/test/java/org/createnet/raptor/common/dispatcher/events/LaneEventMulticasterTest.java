@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.common.dispatcher.events;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.createnet.raptor.common.dispatcher.events.listener.SynchronousApplicationListener;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class LaneEventMulticasterTest {
+
+    static class TestEvent extends ApplicationEvent implements OrderedApplicationEvent {
+
+        public TestEvent(Object source) {
+            super(source);
+        }
+
+        @Override
+        public String getOrderingKey() {
+            return getSource().toString();
+        }
+    }
+
+    static class SyncListener implements SynchronousApplicationListener<TestEvent> {
+
+        final AtomicReference<Thread> thread = new AtomicReference();
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            thread.set(Thread.currentThread());
+        }
+    }
+
+    static class LaneListener implements ApplicationListener<TestEvent> {
+
+        final AtomicReference<Thread> thread = new AtomicReference();
+        final CountDownLatch received = new CountDownLatch(1);
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            thread.set(Thread.currentThread());
+            received.countDown();
+        }
+    }
+
+    private LaneEventMulticaster multicaster;
+
+    @Before
+    public void setUp() {
+        multicaster = new LaneEventMulticaster(new DispatcherConfiguration.EventsConfiguration());
+    }
+
+    @After
+    public void tearDown() {
+        multicaster.destroy();
+    }
+
+    @Test
+    public void synchronousListeners() throws InterruptedException {
+
+        SyncListener sync = new SyncListener();
+        LaneListener lane = new LaneListener();
+        multicaster.addApplicationListener(sync);
+        multicaster.addApplicationListener(lane);
+
+        multicaster.multicastEvent(new TestEvent("device-1"));
+
+        Assert.assertEquals(Thread.currentThread(), sync.thread.get());
+
+        Assert.assertTrue(lane.received.await(5, TimeUnit.SECONDS));
+        Assert.assertNotEquals(Thread.currentThread(), lane.thread.get());
+    }
+
+}
@@ -39,6 +39,7 @@ public class DeviceService {
     
     @CacheEvict(key = "#device.id")
     public Device save(Device device) {
+        device.nextVersion();
         Device saved = repository.save(device);
         return get(saved.getId());
     }
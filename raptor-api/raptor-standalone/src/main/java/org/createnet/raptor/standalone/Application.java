@@ -17,11 +17,14 @@ package org.createnet.raptor.standalone;
 
 import java.util.Arrays;
 import org.createnet.raptor.common.BaseApplication;
-import org.createnet.raptor.common.dispatcher.RaptorMessageHandlerWrapper;
+import org.createnet.raptor.common.dispatcher.MessageHandlerRegistry;
+import org.createnet.raptor.common.dispatcher.transport.DispatcherTransport;
+import org.createnet.raptor.common.dispatcher.transport.LocalTransport;
 import org.createnet.raptor.sdk.Topics;
 import org.createnet.raptor.tree.TreeMessageHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jms.artemis.ArtemisAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -69,18 +72,26 @@ public class Application extends BaseApplication {
     }
 
     @Autowired
-    RaptorMessageHandlerWrapper raptorMessageHandlerWrapper;
+    MessageHandlerRegistry messageHandlerRegistry;
     @Autowired
     TreeMessageHandler treeMessageHandler;
 
+    @Autowired
+    DispatcherTransport dispatcherTransport;
+
     @EventListener({ContextRefreshedEvent.class})
     void contextRefreshedEvent() {
-        raptorMessageHandlerWrapper.registerHandler(treeMessageHandler);
+        messageHandlerRegistry.registerHandler(treeMessageHandler);
+        // with the local transport device events skip the broker round trip
+        if (dispatcherTransport instanceof LocalTransport) {
+            ((LocalTransport) dispatcherTransport).subscribe(Topics.device(Topics.ANY));
+        }
     }
 
     @Bean
+    @ConditionalOnProperty(prefix = "raptor.dispatcher", name = "protocol", havingValue = DispatcherTransport.MQTT, matchIfMissing = true)
     public MessageProducer mqttClient() {
-        return createMqttClient(new String[]{String.format(Topics.DEVICE, "+")});
+        return createMqttClient(new String[]{Topics.device(Topics.ANY)});
     }
 
 }
@@ -15,36 +15,59 @@
  */
 package org.createnet.raptor.stream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.createnet.raptor.common.authentication.RaptorSecurity;
+import org.createnet.raptor.common.cache.DeviceCache;
 import org.createnet.raptor.common.client.ApiClientService;
-import org.createnet.raptor.common.client.InternalApiClientService;
+import org.createnet.raptor.common.query.Continuation;
 import org.createnet.raptor.common.query.DataQueryBuilder;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.auth.User;
 import org.createnet.raptor.models.data.RecordSet;
 import org.createnet.raptor.models.data.ResultSet;
 import org.createnet.raptor.models.objects.Device;
 import org.createnet.raptor.models.objects.RaptorComponent;
 import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.models.query.AggregateQuery;
 import org.createnet.raptor.models.query.DataQuery;
+import org.createnet.raptor.models.query.DeviceQuery;
+import org.createnet.raptor.models.response.BatchResponse;
+import org.createnet.raptor.models.response.ContinuationPage;
 import org.createnet.raptor.models.response.JsonErrorResponse;
+import org.createnet.raptor.sdk.PageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  *
@@ -65,11 +88,16 @@ public class StreamController {
 
     final private Logger log = LoggerFactory.getLogger(StreamController.class);
 
+    /**
+     * Newline delimited JSON, one record per line
+     */
+    final public static String NDJSON = "application/x-ndjson";
+
     @Autowired
     private ApiClientService raptor;
 
     @Autowired
-    private InternalApiClientService serviceApi;
+    private DeviceCache deviceCache;
 
     @Autowired
     private StreamEventPublisher streamPublisher;
@@ -77,16 +105,51 @@ public class StreamController {
     @Autowired
     private StreamService streamService;
 
+    @Autowired
+    private RaptorSecurity raptorSecurity;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private StreamIndexes streamIndexes;
+
+    @RequestMapping(
+            method = RequestMethod.GET,
+            value = "/indexes"
+    )
+    @ApiOperation(
+            value = "Report the usage of the stream data indexes",
+            notes = "Lists the operations served by each index. If `deviceId` and `streamId` are provided, the plan of the query listing that stream is included. Admin only.",
+            nickname = "indexes"
+    )
+    public ResponseEntity<?> indexes(
+            @AuthenticationPrincipal User currentUser,
+            @RequestParam(value = "deviceId", required = false) String deviceId,
+            @RequestParam(value = "streamId", required = false) String streamId
+    ) {
+
+        if (!currentUser.isAdmin()) {
+            return JsonErrorResponse.entity(HttpStatus.FORBIDDEN, "Admin access required");
+        }
+
+        Map<String, Object> report = new HashMap();
+        report.put("indexes", streamIndexes.usage());
+
+        if (deviceId != null && streamId != null) {
+            report.put("plan", streamIndexes.explain(deviceId, streamId));
+        }
+
+        return ResponseEntity.ok(report);
+    }
+
     @RequestMapping(
             method = RequestMethod.PUT,
             value = "/{deviceId}/{streamId}"
     )
     @ApiOperation(
             value = "Save stream data",
-            notes = "",
+            notes = "Records can be sent as JSON or, setting the `Content-Type`, as CBOR (`application/cbor`) or Smile (`application/x-jackson-smile`). The same formats are returned by list and search when requested by `Accept`",
             nickname = "push"
     )
     @PreAuthorize("@raptorSecurity.can(principal, 'device', 'push', #deviceId)")
@@ -97,30 +160,25 @@ public class StreamController {
             @RequestBody RecordSet record
     ) {
 
-        Device device = serviceApi.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Stream stream = device.stream(streamId);
         if (stream == null) {
             return JsonErrorResponse.notFound("Stream not found");
         }
-        record.setStream(stream);
-
-        if (record.userId() == null) {
-            record.userId(currentUser.getId());
-        }
-
-        if (!currentUser.isAdmin() && !record.userId().equals(currentUser.getId())) {
-            record.userId(currentUser.getId());
-        }
 
         try {
-            record.validate();
+            streamService.prepare(currentUser, stream, record);
         } catch (RaptorComponent.ValidationException ex) {
             return JsonErrorResponse.badRequest(ex.getMessage());
         }
 
         // save data!
-        streamService.save(record);
+        try {
+            streamService.save(record);
+        } catch (StreamWriter.QueueFullException ex) {
+            return JsonErrorResponse.entity(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+        }
 
         // notify of invocation       
         streamPublisher.push(record);
@@ -130,6 +188,116 @@ public class StreamController {
         return ResponseEntity.accepted().build();
     }
 
+    @RequestMapping(
+            method = RequestMethod.PUT,
+            value = "/{deviceId}/{streamId}/batch"
+    )
+    @ApiOperation(
+            value = "Save a list of records of a stream",
+            notes = "Records are validated and stored independently, the response lists the rejected records by position",
+            response = BatchResponse.class,
+            nickname = "pushBatch"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'device', 'push', #deviceId)")
+    public ResponseEntity<?> pushBatch(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("deviceId") String deviceId,
+            @PathVariable("streamId") String streamId,
+            @RequestBody List<RecordSet> records
+    ) {
+
+        Device device = deviceCache.load(deviceId);
+
+        Stream stream = device.stream(streamId);
+        if (stream == null) {
+            return JsonErrorResponse.notFound("Stream not found");
+        }
+
+        BatchResponse response = storeBatch(currentUser, records, (record) -> stream);
+
+        log.info("Stored {}/{} records [stream={} deviceId={}]", response.getAccepted(), response.getTotal(), streamId, deviceId);
+
+        return ResponseEntity.accepted().body(response);
+    }
+
+    @RequestMapping(
+            method = RequestMethod.PUT,
+            value = "/{deviceId}"
+    )
+    @ApiOperation(
+            value = "Save a list of records for multiple streams of a device",
+            notes = "Each record must provide the `streamId` it belongs to. Records are validated and stored independently, the response lists the rejected records by position",
+            response = BatchResponse.class,
+            nickname = "pushDeviceBatch"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'device', 'push', #deviceId)")
+    public ResponseEntity<?> pushDeviceBatch(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("deviceId") String deviceId,
+            @RequestBody List<RecordSet> records
+    ) {
+
+        Device device = deviceCache.load(deviceId);
+
+        BatchResponse response = storeBatch(currentUser, records, (record) -> {
+            if (record.streamId() == null) {
+                throw new RaptorComponent.ValidationException("Field `streamId` is missing");
+            }
+            Stream stream = device.stream(record.streamId());
+            if (stream == null) {
+                throw new RaptorComponent.ValidationException("Stream not found: " + record.streamId());
+            }
+            return stream;
+        });
+
+        log.info("Stored {}/{} records [deviceId={}]", response.getAccepted(), response.getTotal(), deviceId);
+
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Validate, store with a single bulk write and notify a list of records
+     *
+     * @param currentUser
+     * @param records
+     * @param streamResolver return the stream of a record
+     * @return
+     */
+    protected BatchResponse storeBatch(User currentUser, List<RecordSet> records, Function<RecordSet, Stream> streamResolver) {
+
+        Map<Integer, String> errors = new HashMap();
+        List<RecordSet> valid = new ArrayList();
+        List<Integer> positions = new ArrayList();
+
+        for (int i = 0; i < records.size(); i++) {
+            RecordSet record = records.get(i);
+            try {
+                streamService.prepare(currentUser, streamResolver.apply(record), record);
+                valid.add(record);
+                positions.add(i);
+            } catch (RaptorComponent.ValidationException ex) {
+                errors.put(i, ex.getMessage());
+            }
+        }
+
+        // save data!
+        Map<Integer, String> failures = streamService.save(valid);
+
+        for (int i = 0; i < valid.size(); i++) {
+            if (failures.containsKey(i)) {
+                errors.put(positions.get(i), failures.get(i));
+                continue;
+            }
+            // notify of invocation
+            streamPublisher.push(valid.get(i));
+        }
+
+        BatchResponse response = new BatchResponse(records.size());
+        errors.keySet().stream().sorted().forEach((i) -> response.error(i, errors.get(i)));
+
+        return response;
+    }
+
     @RequestMapping(
             method = RequestMethod.DELETE,
             value = "/{deviceId}/{streamId}"
@@ -146,7 +314,7 @@ public class StreamController {
             @PathVariable("streamId") String streamId
     ) {
 
-        Device device = serviceApi.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Stream stream = device.stream(streamId);
         if (stream == null) {
@@ -165,7 +333,8 @@ public class StreamController {
     )
     @ApiOperation(
             value = "Retrieve all the stored stream data",
-            notes = "",
+            notes = "With `Accept: " + NDJSON + "` or `?stream=true` all the records are streamed from a database cursor, as one record per line or as a JSON array. Only the `sort` parameter applies.\n\n"
+            + "With `?keyset=true` records are paged by (timestamp, id) and the response provides a `continuation` token to pass as `?continuation=` to get the next page",
             nickname = "list"
     )
     @PreAuthorize("@raptorSecurity.can(principal, 'device', 'pull', #deviceId)")
@@ -173,16 +342,38 @@ public class StreamController {
             @AuthenticationPrincipal User currentUser,
             @PathVariable("deviceId") String deviceId,
             @PathVariable("streamId") String streamId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "stream", defaultValue = "false") boolean streaming,
+            @RequestParam(value = "keyset", defaultValue = "false") boolean keyset,
+            @RequestParam(value = "continuation", required = false) String continuation,
             Pageable pager
     ) {
 
-        Device device = serviceApi.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Stream stream = device.stream(streamId);
         if (stream == null) {
             return JsonErrorResponse.notFound("Stream not found");
         }
 
+        if (isNdjson(accept) || streaming) {
+            return streamRecords(stream, () -> streamService.stream(stream, pager.getSort()), isNdjson(accept));
+        }
+
+        if (keyset || continuation != null) {
+
+            Sort.Order order = pager.getSort() == null ? null : pager.getSort().getOrderFor("timestamp");
+
+            Continuation position;
+            try {
+                position = getContinuation(continuation, order == null ? null : order.getDirection());
+            } catch (IllegalArgumentException ex) {
+                return JsonErrorResponse.badRequest(ex.getMessage());
+            }
+
+            return ResponseEntity.ok(bind(stream, streamService.list(stream, position, pager.getPageSize())));
+        }
+
         List<RecordSet> records = streamService.list(stream, pager);
 
         return ResponseEntity.ok(records);
@@ -204,7 +395,7 @@ public class StreamController {
             @PathVariable("streamId") String streamId
     ) {
 
-        Device device = serviceApi.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Stream stream = device.stream(streamId);
         if (stream == null) {
@@ -226,7 +417,8 @@ public class StreamController {
     )
     @ApiOperation(
             value = "Retrieve data based on the search query",
-            notes = "",
+            notes = "With `Accept: " + NDJSON + "` or `?stream=true` the matching records are streamed from a database cursor, as one record per line or as a JSON array.\n\n"
+            + "With `?keyset=true` records are paged by (timestamp, id), `offset` is ignored and the response provides a `continuation` token to pass as `?continuation=` to get the next page",
             nickname = "search"
     )
     @PreAuthorize("@raptorSecurity.can(principal, 'device', 'pull', #deviceId)")
@@ -234,10 +426,14 @@ public class StreamController {
             @AuthenticationPrincipal User currentUser,
             @PathVariable("deviceId") String deviceId,
             @PathVariable("streamId") String streamId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "stream", defaultValue = "false") boolean streaming,
+            @RequestParam(value = "keyset", defaultValue = "false") boolean keyset,
+            @RequestParam(value = "continuation", required = false) String continuation,
             @RequestBody DataQuery query
     ) {
 
-        Device device = serviceApi.Inventory().load(deviceId);
+        Device device = deviceCache.load(deviceId);
 
         Stream stream = device.stream(streamId);
         if (stream == null) {
@@ -248,10 +444,29 @@ public class StreamController {
         query.deviceId(deviceId);
 
         DataQueryBuilder qb = new DataQueryBuilder(query);
+
+        if (keyset || continuation != null) {
+
+            Sort.Direction direction = query.sortBy.getFields().contains("timestamp") ? Sort.Direction.valueOf(query.sortBy.getDirection()) : null;
+
+            Continuation position;
+            try {
+                position = getContinuation(continuation, direction);
+            } catch (IllegalArgumentException ex) {
+                return JsonErrorResponse.badRequest(ex.getMessage());
+            }
+
+            int size = query.getLimit() == null || query.getLimit() < 1 ? 1000 : query.getLimit();
+            return ResponseEntity.ok(bind(stream, streamService.page(qb.getQuery(position), position, size)));
+        }
 //        Pageable paging = qb.getPaging();
 //        Predicate predicate = qb.getPredicate();
         Query q = qb.getQuery();
 
+        if (isNdjson(accept) || streaming) {
+            return streamRecords(stream, () -> streamService.stream(q), isNdjson(accept));
+        }
+
         ResultSet result = new ResultSet(stream);
 
         List<RecordSet> records = mongoTemplate.find(q, RecordSet.class);
@@ -262,4 +477,215 @@ public class StreamController {
         return ResponseEntity.ok(result);
     }
 
+    @RequestMapping(
+            method = RequestMethod.POST,
+            value = "/{deviceId}/{streamId}/aggregate"
+    )
+    @ApiOperation(
+            value = "Aggregate the stream data matching the search query",
+            notes = "Channels operators are set in `aggregate.channels`: count, min, max, avg, sum, first, last or pNN for a percentile (eg. p95). "
+            + "Records are grouped in buckets of `aggregate.interval` milliseconds, aligned to the epoch, or in a single bucket if not set. "
+            + "Values are returned by column, the nth value of each operator refers to the nth bucket timestamp",
+            nickname = "aggregate"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'device', 'pull', #deviceId)")
+    public ResponseEntity<?> aggregate(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("deviceId") String deviceId,
+            @PathVariable("streamId") String streamId,
+            @RequestBody DataQuery query
+    ) {
+
+        Device device = deviceCache.load(deviceId);
+
+        Stream stream = device.stream(streamId);
+        if (stream == null) {
+            return JsonErrorResponse.notFound("Stream not found");
+        }
+
+        if (query.getAggregate() == null) {
+            return JsonErrorResponse.badRequest("Missing aggregate operators");
+        }
+
+        try {
+            query.getAggregate().validate(stream);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.badRequest(ex.getMessage());
+        }
+
+        query.streamId(streamId);
+        query.deviceId(deviceId);
+
+        return aggregate(query);
+    }
+
+    @RequestMapping(
+            method = RequestMethod.POST,
+            value = "/aggregate/{streamId}"
+    )
+    @ApiOperation(
+            value = "Aggregate the data of a stream across devices",
+            notes = "As the device aggregation, over the records of the stream `streamId` of all the devices of the user the caller can pull data from, optionally grouped by device with `aggregate.byDevice`. "
+            + "Only admins can set a different `userId`. Results over the max amount of buckets are truncated and flagged as `truncated`",
+            nickname = "aggregateDevices"
+    )
+    @PreAuthorize("@raptorSecurity.list(principal, 'device')")
+    public ResponseEntity<?> aggregateDevices(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("streamId") String streamId,
+            @RequestBody DataQuery query
+    ) {
+
+        if (query.getAggregate() == null) {
+            return JsonErrorResponse.badRequest("Missing aggregate operators");
+        }
+
+        try {
+            query.getAggregate().validate();
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.badRequest(ex.getMessage());
+        }
+
+        String ownerId = currentUser.isAdmin() && query.getUserId() != null ? query.getUserId() : currentUser.getId();
+
+        // records carry the id of the publisher, select them by device
+        query.userId(null);
+        query.deviceIds(getPullableDevices(currentUser, ownerId));
+        query.streamId(streamId);
+
+        return aggregate(query);
+    }
+
+    /**
+     * Return the ids of the devices of an user the caller can pull data from
+     *
+     * @param currentUser
+     * @param ownerId
+     * @return
+     */
+    protected List<String> getPullableDevices(User currentUser, String ownerId) {
+
+        List<String> ids = new ArrayList();
+        DeviceQuery devices = new DeviceQuery(ownerId);
+
+        int page = 0;
+        PageResponse<Device> result;
+        do {
+            devices.offset(page++);
+            result = raptor.Inventory().search(devices);
+            result.getContent().stream()
+                    .filter((device) -> raptorSecurity.can(currentUser, EntityType.device, Operation.pull, device))
+                    .forEach((device) -> ids.add(device.id()));
+        } while (!result.isLast() && !result.getContent().isEmpty());
+
+        return ids;
+    }
+
+    /**
+     * Run an aggregation, rejecting time ranges with too many buckets and
+     * percentiles over too many records
+     *
+     * @param query
+     * @return
+     */
+    protected ResponseEntity<?> aggregate(DataQuery query) {
+
+        Number[] range = query.getTimestamp().getBetween();
+        if (range != null && range[0] != null && range[1] != null) {
+            long buckets = query.getAggregate().buckets(range[0].longValue(), range[1].longValue());
+            if (buckets > AggregateQuery.MAX_BUCKETS) {
+                return JsonErrorResponse.badRequest("Too many buckets (" + buckets + "), max is " + AggregateQuery.MAX_BUCKETS);
+            }
+        }
+
+        if (query.getAggregate().hasPercentiles()
+                && streamService.count(query, AggregateQuery.MAX_PERCENTILE_VALUES + 1) > AggregateQuery.MAX_PERCENTILE_VALUES) {
+            return JsonErrorResponse.badRequest("Percentiles are limited to " + AggregateQuery.MAX_PERCENTILE_VALUES + " records, narrow the time range");
+        }
+
+        return ResponseEntity.ok(streamService.aggregate(query));
+    }
+
+    /**
+     * Return the keyset position of a continuation token, or the first page
+     * position if no token is provided
+     *
+     * @param token
+     * @param direction sort direction of the first page, ascending if null
+     * @return
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    protected Continuation getContinuation(String token, Sort.Direction direction) {
+        if (token == null || token.isEmpty()) {
+            return Continuation.first(direction);
+        }
+        return Continuation.parse(token);
+    }
+
+    /**
+     * Bind the records of a page to their stream so the serializer enforces
+     * its schema
+     *
+     * @param stream
+     * @param page
+     * @return
+     */
+    protected ContinuationPage<RecordSet> bind(Stream stream, ContinuationPage<RecordSet> page) {
+        page.getContent().forEach((record) -> record.setStream(stream));
+        return page;
+    }
+
+    protected boolean isNdjson(String accept) {
+        return accept != null && accept.contains(NDJSON);
+    }
+
+    /**
+     * Write the records read from a database cursor as they are fetched, so
+     * that the result is never held in memory. Records are bound to the
+     * stream so the serializer enforces its schema.
+     *
+     * @param stream
+     * @param cursor open the cursor to read from
+     * @param ndjson write one record per line instead of a JSON array
+     * @return
+     */
+    protected ResponseEntity<StreamingResponseBody> streamRecords(Stream stream, Supplier<CloseableIterator<RecordSet>> cursor, boolean ndjson) {
+
+        StreamingResponseBody body = (out) -> {
+
+            long count = 0;
+            try (CloseableIterator<RecordSet> records = cursor.get()) {
+
+                JsonGenerator generator = Device.getMapper().getFactory().createGenerator(out);
+                generator.setRootValueSeparator(null);
+
+                if (!ndjson) {
+                    generator.writeStartArray();
+                }
+
+                while (records.hasNext()) {
+                    RecordSet record = records.next();
+                    record.setStream(stream);
+                    generator.writeObject(record);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                    count++;
+                }
+
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+
+                generator.flush();
+            }
+
+            log.debug("Streamed {} records [stream={} deviceId={}]", count, stream.name(), stream.getDevice().id());
+        };
+
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.parseMediaType(NDJSON) : MediaType.APPLICATION_JSON_UTF8)
+                .body(body);
+    }
+
 }
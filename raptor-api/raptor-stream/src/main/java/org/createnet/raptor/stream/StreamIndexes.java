@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.stream;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.data.RecordSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Component;
+
+/**
+ * Manage the indexes of the stream data collection.
+ *
+ * The compound indexes declared on RecordSet are created by the mapping
+ * context, the single field indexes declared by previous versions are dropped on
+ * startup as they only slow down inserts.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class StreamIndexes {
+
+    final private Logger log = LoggerFactory.getLogger(StreamIndexes.class);
+
+    /**
+     * Single field indexes replaced by RecordSet.STREAM_INDEX and
+     * RecordSet.USER_STREAM_INDEX
+     */
+    final public static List<String> LEGACY_INDEXES = Arrays.asList("timestamp", "channels", "userId", "streamId", "deviceId");
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        if (config.getStream().isDropLegacyIndexes()) {
+            dropLegacyIndexes();
+        }
+    }
+
+    /**
+     * Drop the legacy single field indexes if present
+     */
+    public void dropLegacyIndexes() {
+
+        IndexOperations ops = mongoTemplate.indexOps(RecordSet.class);
+
+        for (IndexInfo index : ops.getIndexInfo()) {
+            if (LEGACY_INDEXES.contains(index.getName())) {
+                log.info("Drop legacy stream index `{}`", index.getName());
+                try {
+                    ops.dropIndex(index.getName());
+                } catch (RuntimeException ex) {
+                    log.warn("Cannot drop index `{}`: {}", index.getName(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Report the usage of each index of the collection since the database
+     * started, as returned by `$indexStats`
+     *
+     * @return
+     */
+    public List<Map<String, Object>> usage() {
+
+        DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(RecordSet.class));
+
+        List<DBObject> pipeline = Arrays.asList(new BasicDBObject("$indexStats", new BasicDBObject()));
+        AggregationOptions options = AggregationOptions.builder().outputMode(AggregationOptions.OutputMode.CURSOR).build();
+
+        List<Map<String, Object>> report = new ArrayList();
+        try (Cursor cursor = collection.aggregate(pipeline, options)) {
+            while (cursor.hasNext()) {
+
+                DBObject stats = cursor.next();
+                DBObject accesses = (DBObject) stats.get("accesses");
+
+                Map<String, Object> index = new LinkedHashMap();
+                index.put("name", stats.get("name"));
+                index.put("key", stats.get("key"));
+                index.put("ops", accesses == null ? 0 : accesses.get("ops"));
+                index.put("since", accesses == null ? null : accesses.get("since"));
+                report.add(index);
+            }
+        }
+
+        return report;
+    }
+
+    /**
+     * Return the winning plan of the query used to list the records of a
+     * stream, to confirm it is covered by an index
+     *
+     * @param deviceId
+     * @param streamId
+     * @return
+     */
+    public Object explain(String deviceId, String streamId) {
+
+        DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(RecordSet.class));
+
+        DBObject query = new BasicDBObject("deviceId", deviceId).append("streamId", streamId);
+        DBObject sort = new BasicDBObject("timestamp", -1).append("_id", -1);
+
+        DBObject explain = collection.find(query).sort(sort).limit(1).explain();
+        DBObject planner = (DBObject) explain.get("queryPlanner");
+
+        return planner == null ? explain : planner.get("winningPlan");
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.stream;
+
+import org.createnet.raptor.common.configuration.MqttConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.configuration.StreamConfiguration;
+import org.createnet.raptor.sdk.Topics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+
+/**
+ * Subscribe to the ingest topics when `stream.ingest.enabled` is set
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "raptor.stream.ingest", name = "enabled")
+public class StreamIngestConfiguration {
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private MqttPahoClientFactory mqttClientFactory;
+
+    @Autowired
+    private StreamIngestion streamIngestion;
+
+    @Bean
+    public MessageChannel streamIngestChannel() {
+        return MqttConfiguration.inputChannel("streamIngestChannel", config.getDispatcher().getConsumer());
+    }
+
+    @Bean
+    @ServiceActivator(inputChannel = "streamIngestChannel")
+    public MessageHandler streamIngestHandler() {
+        return (message) -> {
+            streamIngestion.handle((String) message.getHeaders().get(MqttHeaders.TOPIC), (byte[]) message.getPayload());
+        };
+    }
+
+    @Bean
+    public MessageProducer streamIngestClient() {
+        StreamConfiguration.IngestConfiguration ingest = config.getStream().getIngest();
+        String topic = Topics.shared(ingest.getSharedGroup(), Topics.ingest(Topics.ANY, Topics.ANY));
+        return MqttConfiguration.inboundAdapter(mqttClientFactory, streamIngestChannel(), ingest.getQos(), topic);
+    }
+
+}
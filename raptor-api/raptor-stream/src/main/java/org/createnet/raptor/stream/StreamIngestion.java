@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.createnet.raptor.common.authentication.RaptorSecurity;
+import org.createnet.raptor.common.authentication.TokenVerifier;
+import org.createnet.raptor.common.cache.DeviceCache;
+import org.createnet.raptor.common.configuration.TokenHelper;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.RaptorComponent;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.sdk.Topics;
+import org.createnet.raptor.sdk.exception.AuthenticationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Store records published by devices on `ingest/{deviceId}/{streamId}`, in any
+ * supported data format. The message is an envelope `{"token": "..", "data":
+ * record or list of records}`.
+ *
+ * The token must have push permission on the device, as for the HTTP push.
+ * Records are bound to the device and stream of the topic and to the device
+ * owner, then validated and stored. Errors are logged and counted, as there is
+ * no one to reply to.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class StreamIngestion implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(StreamIngestion.class);
+
+    @Autowired
+    private DeviceCache deviceCache;
+
+    @Autowired
+    private TokenVerifier tokenVerifier;
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Autowired
+    private RaptorSecurity raptorSecurity;
+
+    @Autowired
+    private StreamService streamService;
+
+    @Autowired
+    private StreamEventPublisher streamPublisher;
+
+    final private LongAdder received = new LongAdder();
+    final private LongAdder stored = new LongAdder();
+    final private LongAdder rejected = new LongAdder();
+    final private LongAdder unauthorized = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+
+    /**
+     * Handle a message received on an ingest topic
+     *
+     * @param topic
+     * @param payload
+     */
+    public void handle(String topic, byte[] payload) {
+
+        received.increment();
+
+        String[] parts = topic == null ? new String[0] : topic.split("/");
+        if (parts.length != 3) {
+            rejected.increment();
+            log.debug("Skip message on invalid ingest topic {}", topic);
+            return;
+        }
+
+        try {
+
+            Device device = deviceCache.load(parts[1]);
+            Stream stream = device == null ? null : device.stream(parts[2]);
+            if (stream == null) {
+                rejected.increment();
+                log.debug("Skip message for unknown stream {}", topic);
+                return;
+            }
+
+            ObjectMapper mapper = DataFormat.detect(payload).getMapper();
+            JsonNode envelope = mapper.readTree(payload);
+            JsonNode token = envelope.path(Topics.INGEST_TOKEN);
+            JsonNode data = envelope.path(Topics.INGEST_DATA);
+            if (!token.isTextual() || data.isMissingNode()) {
+                unauthorized.increment();
+                log.debug("Skip message without token or data on {}", topic);
+                return;
+            }
+
+            User user = tokenVerifier.authenticate(tokenHelper.extractToken(token.asText()));
+            if (!raptorSecurity.can(user, EntityType.device, Operation.push, device.id())) {
+                unauthorized.increment();
+                log.debug("User {} cannot push to {}", user.getId(), topic);
+                return;
+            }
+
+            List<RecordSet> records = parse(mapper, data);
+            for (RecordSet record : records) {
+                // attributed to the publisher as on the HTTP push
+                streamService.prepare(user, stream, record);
+            }
+
+            Map<Integer, String> failures = streamService.save(records);
+            for (int i = 0; i < records.size(); i++) {
+                if (failures.containsKey(i)) {
+                    failed.increment();
+                    continue;
+                }
+                stored.increment();
+                streamPublisher.push(records.get(i));
+            }
+
+            if (!failures.isEmpty()) {
+                log.warn("Failed to store {}/{} records from {}: {}", failures.size(), records.size(), topic, failures.values().iterator().next());
+            }
+
+        } catch (AuthenticationFailedException ex) {
+            unauthorized.increment();
+            log.debug("Invalid token on {}: {}", topic, ex.getMessage());
+        } catch (IOException | RaptorComponent.ValidationException | RaptorComponent.ParserException ex) {
+            rejected.increment();
+            log.debug("Rejected message on {}: {}", topic, ex.getMessage());
+        } catch (Exception ex) {
+            failed.increment();
+            log.warn("Failed to ingest message on {}: {}", topic, ex.getMessage());
+        }
+    }
+
+    protected List<RecordSet> parse(ObjectMapper mapper, JsonNode node) throws IOException {
+
+        List<RecordSet> records = new ArrayList();
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                records.add(mapper.treeToValue(item, RecordSet.class));
+            }
+        } else {
+            records.add(mapper.treeToValue(node, RecordSet.class));
+        }
+
+        return records;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("stream.ingest.received", received.sum()));
+        metrics.add(new Metric<>("stream.ingest.stored", stored.sum()));
+        metrics.add(new Metric<>("stream.ingest.rejected", rejected.sum()));
+        metrics.add(new Metric<>("stream.ingest.unauthorized", unauthorized.sum()));
+        metrics.add(new Metric<>("stream.ingest.failed", failed.sum()));
+        return metrics;
+    }
+
+}
@@ -15,15 +15,37 @@
  */
 package org.createnet.raptor.stream;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.client.model.DBCollectionCountOptions;
 import com.querydsl.core.types.Predicate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.createnet.raptor.common.query.Continuation;
+import org.createnet.raptor.common.query.DataQueryBuilder;
+import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.data.AggregateResult;
 import org.createnet.raptor.models.data.RecordSet;
 import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.models.query.AggregateQuery;
+import org.createnet.raptor.models.query.DataQuery;
+import org.createnet.raptor.models.response.ContinuationPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 /**
@@ -36,14 +58,247 @@ public class StreamService {
     @Autowired
     private StreamRepository repository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private StreamWriter writer;
+
+    /**
+     * Bind a record to its stream, enforce ownership and validate it against
+     * the stream schema. Records of non admin users are attributed to them
+     *
+     * @param currentUser the publisher
+     * @param stream
+     * @param record
+     */
+    public void prepare(User currentUser, Stream stream, RecordSet record) {
+
+        record.setStream(stream);
+
+        if (record.userId() == null) {
+            record.userId(currentUser.getId());
+        }
+
+        if (!currentUser.isAdmin() && !record.userId().equals(currentUser.getId())) {
+            record.userId(currentUser.getId());
+        }
+
+        record.validate();
+    }
+
+    /**
+     * Store a record, or queue it when the write-behind is enabled
+     *
+     * @param record
+     * @throws StreamWriter.QueueFullException if the write queue is full
+     */
     public void save(RecordSet record) {
+        if (writer.isEnabled()) {
+            writer.write(record);
+            return;
+        }
         repository.save(record);
     }
 
+    /**
+     * Store a list of records, or queue them when the write-behind is enabled.
+     * Records that cannot be queued are reported as failed.
+     *
+     * @param records
+     * @return the failed records position in the list, with the error message
+     */
+    public Map<Integer, String> save(List<RecordSet> records) {
+
+        if (!writer.isEnabled()) {
+            return bulkSave(records);
+        }
+
+        Map<Integer, String> failures = new HashMap();
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                writer.write(records.get(i));
+            } catch (StreamWriter.QueueFullException ex) {
+                failures.put(i, ex.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Store a list of records with a single unordered bulk insert. A failing
+     * record does not prevent the others from being stored.
+     *
+     * @param records
+     * @return the failed records position in the list, with the error message
+     */
+    public Map<Integer, String> bulkSave(List<RecordSet> records) {
+        return writer.insert(records);
+    }
+
     public List<RecordSet> list(Stream stream, Pageable page) {
         return repository.findByDeviceIdAndStreamId(stream.getDevice().id(), stream.name(), page);
     }
 
+    /**
+     * List the records of a stream following a keyset position
+     *
+     * @param stream
+     * @param continuation
+     * @param size
+     * @return
+     */
+    public ContinuationPage<RecordSet> list(Stream stream, Continuation continuation, int size) {
+
+        Query query = new Query(Criteria.where("deviceId").is(stream.getDevice().id()).and("streamId").is(stream.name()));
+        if (!continuation.isFirst()) {
+            query.addCriteria(continuation.getCriteria());
+        }
+        query.with(continuation.getSort());
+        query.withHint(RecordSet.STREAM_INDEX);
+
+        return page(query, continuation, size);
+    }
+
+    /**
+     * Fetch a page of records with a keyset query, sorted by (timestamp, id).
+     * One more record than the page size is read to detect the last page.
+     *
+     * @param query
+     * @param continuation the position the query starts from
+     * @param size
+     * @return
+     */
+    public ContinuationPage<RecordSet> page(Query query, Continuation continuation, int size) {
+
+        query.limit(size + 1);
+        List<RecordSet> records = mongoTemplate.find(query, RecordSet.class);
+
+        String next = null;
+        if (records.size() > size) {
+            records = records.subList(0, size);
+            RecordSet last = records.get(size - 1);
+            next = continuation.next(last.getTimestamp(), last.getId()).toToken();
+        }
+
+        return new ContinuationPage(records, size, next);
+    }
+
+    /**
+     * Open a cursor over all the records of a stream. The caller must close
+     * it.
+     *
+     * @param stream
+     * @param sort
+     * @return
+     */
+    public CloseableIterator<RecordSet> stream(Stream stream, Sort sort) {
+        Query query = new Query(Criteria.where("deviceId").is(stream.getDevice().id()).and("streamId").is(stream.name()));
+        query.withHint(RecordSet.STREAM_INDEX);
+        return stream(query.with(sort));
+    }
+
+    /**
+     * Open a cursor over the records matching a query. The caller must close
+     * it.
+     *
+     * @param query
+     * @return
+     */
+    public CloseableIterator<RecordSet> stream(Query query) {
+        return mongoTemplate.stream(query, RecordSet.class);
+    }
+
+    /**
+     * Aggregate the records matching a data query
+     *
+     * @param query a data query with the aggregate operators set
+     * @return
+     */
+    public AggregateResult aggregate(DataQuery query) {
+
+        AggregateQuery aggregate = query.getAggregate();
+        AggregateResult result = new AggregateResult(query.getStreamId(), aggregate.getInterval());
+
+        Aggregation aggregation = new DataQueryBuilder(query).getAggregation();
+        AggregationResults<DBObject> buckets = mongoTemplate.aggregate(aggregation, RecordSet.class, DBObject.class);
+
+        Map<String, AggregateResult.Series> series = new LinkedHashMap();
+        int count = 0;
+        for (DBObject bucket : buckets) {
+
+            if (++count > AggregateQuery.MAX_BUCKETS) {
+                result.setTruncated(true);
+                break;
+            }
+
+            DBObject id = (DBObject) bucket.get("_id");
+            String deviceId = aggregate.isByDevice() ? (String) id.get("d") : null;
+
+            AggregateResult.Series s = series.computeIfAbsent(deviceId, (d) -> new AggregateResult.Series(d));
+
+            Number timestamp = aggregate.getInterval() > 0 ? (Number) id.get("t") : ((Date) bucket.get("_t")).getTime();
+            s.getTimestamps().add(timestamp.longValue());
+
+            int i = 0;
+            for (Map.Entry<String, List<String>> en : aggregate.getChannels().entrySet()) {
+
+                List<Double> values = null;
+                if (bucket.containsField(DataQueryBuilder.getAggregateValuesField(i))) {
+                    values = ((List<Object>) bucket.get(DataQueryBuilder.getAggregateValuesField(i))).stream()
+                            .filter((v) -> v instanceof Number)
+                            .map((v) -> ((Number) v).doubleValue())
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+
+                int j = 0;
+                for (String operator : en.getValue()) {
+                    Double p = AggregateQuery.percentile(operator);
+                    Object value = p == null ? bucket.get(DataQueryBuilder.getAggregateField(i, j)) : percentile(values, p);
+                    s.values(en.getKey(), operator).add(value);
+                    j++;
+                }
+
+                i++;
+            }
+        }
+
+        result.getSeries().addAll(series.values());
+        return result;
+    }
+
+    /**
+     * Count the records matching a data query, stopping at a limit
+     *
+     * @param query
+     * @param limit max records to count
+     * @return
+     */
+    public long count(DataQuery query, int limit) {
+        Query q = new DataQueryBuilder(query).getQuery();
+        // map the criteria as find does, eg. geo shapes to their operators
+        DBObject filter = q == null ? new BasicDBObject() : new QueryMapper(mongoTemplate.getConverter())
+                .getMappedObject(q.getQueryObject(), mongoTemplate.getConverter().getMappingContext().getPersistentEntity(RecordSet.class));
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(RecordSet.class))
+                .count(filter, new DBCollectionCountOptions().limit(limit));
+    }
+
+    /**
+     * Return the nearest rank percentile of a sorted list
+     *
+     * @param values
+     * @param p percentile, in the range (0, 100]
+     * @return the value or null if the list is empty
+     */
+    protected Double percentile(List<Double> values, double p) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        int rank = (int) Math.ceil(p / 100 * values.size());
+        return values.get(Math.max(rank, 1) - 1);
+    }
+
     public RecordSet lastUpdate(Stream stream) {
         
         Pageable page = new PageRequest(0, 1, new Sort(Sort.Direction.DESC, "timestamp"));
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.stream;
+
+import com.mongodb.BulkWriteError;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.createnet.raptor.common.metrics.Histogram;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.configuration.StreamConfiguration;
+import org.createnet.raptor.models.data.RecordSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind pipeline for stream data. Records are queued in a bounded buffer
+ * and a pool of writers group-commit them with bulk inserts every `batchSize`
+ * records or `flushInterval` milliseconds, whichever comes first.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class StreamWriter implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(StreamWriter.class);
+
+    /**
+     * Raised when the queue is full and a record cannot be accepted
+     */
+    public static class QueueFullException extends RuntimeException {
+
+        public QueueFullException() {
+            super("Stream write queue is full, retry later");
+        }
+
+    }
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private StreamConfiguration.WriterConfiguration settings;
+    private BlockingQueue<RecordSet> queue;
+    private ExecutorService writers;
+    private volatile boolean running = false;
+
+    final private LongAdder written = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+    final private LongAdder rejected = new LongAdder();
+    final private Histogram batchSizes = new Histogram(1, 10, 50, 100, 250, 500, 1000);
+    final private Histogram flushLatency = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000);
+
+    @PostConstruct
+    public void start() {
+
+        settings = config.getStream().getWriter();
+        if (!settings.isAsync()) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue(settings.getQueueLength());
+        writers = Executors.newFixedThreadPool(settings.getPoolSize(), new CustomizableThreadFactory("stream-writer-"));
+
+        running = true;
+        for (int i = 0; i < settings.getPoolSize(); i++) {
+            writers.submit(this::drain);
+        }
+
+        log.info("Started stream write-behind [writers={} queueLength={} batchSize={} flushInterval={}ms]",
+                settings.getPoolSize(), settings.getQueueLength(), settings.getBatchSize(), settings.getFlushInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        writers.shutdown();
+
+        try {
+            if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Stream writers did not terminate, {} records not stored", queue.size());
+                writers.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Return true if records are stored asynchronously
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Queue a record to be stored
+     *
+     * @param record
+     * @throws QueueFullException if the buffer is full
+     */
+    public void write(RecordSet record) {
+        if (!queue.offer(record)) {
+            rejected.increment();
+            throw new QueueFullException();
+        }
+    }
+
+    /**
+     * Writer loop, collect a batch and store it until stopped and the queue is
+     * empty
+     */
+    protected void drain() {
+
+        final int batchSize = settings.getBatchSize();
+        final long flushInterval = settings.getFlushInterval();
+        final List<RecordSet> batch = new ArrayList(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+
+                RecordSet first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize) {
+
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0 || !running) {
+                        break;
+                    }
+
+                    RecordSet next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error("Stream writer failure: {}", ex.getMessage(), ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    protected void flush(List<RecordSet> batch) {
+
+        long start = System.currentTimeMillis();
+        Map<Integer, String> failures = insert(batch);
+        flushLatency.record(System.currentTimeMillis() - start);
+        batchSizes.record(batch.size());
+
+        written.add(batch.size() - failures.size());
+        if (!failures.isEmpty()) {
+            failed.add(failures.size());
+            log.warn("Failed to store {}/{} records: {}", failures.size(), batch.size(), failures.values().iterator().next());
+        }
+    }
+
+    /**
+     * Store a list of records with a single unordered bulk insert. A failing
+     * record does not prevent the others from being stored.
+     *
+     * @param records
+     * @return the failed records position in the list, with the error message
+     */
+    public Map<Integer, String> insert(List<RecordSet> records) {
+
+        Map<Integer, String> failures = new HashMap();
+
+        if (records.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            mongoTemplate
+                    .bulkOps(BulkOperations.BulkMode.UNORDERED, RecordSet.class)
+                    .insert(records)
+                    .execute();
+        } catch (BulkOperationException ex) {
+            for (BulkWriteError err : ex.getErrors()) {
+                failures.put(err.getIndex(), err.getMessage());
+            }
+        }
+
+        return failures;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        if (!running) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("stream.writer.queue.depth", queue.size()));
+        metrics.add(new Metric<>("stream.writer.queue.capacity", settings.getQueueLength()));
+        metrics.add(new Metric<>("stream.writer.written", written.sum()));
+        metrics.add(new Metric<>("stream.writer.failed", failed.sum()));
+        metrics.add(new Metric<>("stream.writer.rejected", rejected.sum()));
+        metrics.addAll(batchSizes.metrics("stream.writer.batch.size"));
+        metrics.addAll(flushLatency.metrics("stream.writer.flush.latency"));
+        return metrics;
+    }
+
+}
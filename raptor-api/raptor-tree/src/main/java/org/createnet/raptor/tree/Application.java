@@ -17,7 +17,7 @@
 package org.createnet.raptor.tree;
 
 import org.createnet.raptor.common.BaseApplication;
-import org.createnet.raptor.common.dispatcher.RaptorMessageHandlerWrapper;
+import org.createnet.raptor.common.dispatcher.MessageHandlerRegistry;
 import org.createnet.raptor.sdk.Topics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -44,19 +44,19 @@ public class Application extends BaseApplication {
     }
 
     @Autowired
-    RaptorMessageHandlerWrapper raptorMessageHandlerWrapper;
+    MessageHandlerRegistry messageHandlerRegistry;
     
     @Autowired 
     TreeMessageHandler treeMessageHandler;
 
     @EventListener({ContextRefreshedEvent.class})
     void contextRefreshedEvent() {
-        raptorMessageHandlerWrapper.registerHandler(treeMessageHandler);
+        messageHandlerRegistry.registerHandler(treeMessageHandler);
     }
 
     @Bean
     public MessageProducer mqttClient() {
-        return createMqttClient(new String[]{String.format(Topics.DEVICE, "+")});
+        return createMqttClient(new String[]{Topics.device(Topics.ANY)});
     }
 
 }
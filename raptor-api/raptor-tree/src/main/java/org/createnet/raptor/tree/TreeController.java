@@ -20,12 +20,20 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import org.createnet.raptor.common.authentication.RaptorSecurity;
 import org.createnet.raptor.common.client.ApiClientService;
 import org.createnet.raptor.common.query.TreeQueryBuilder;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.auth.User;
+import org.createnet.raptor.models.objects.RaptorComponent;
 import org.createnet.raptor.models.query.TreeQuery;
 import org.createnet.raptor.models.response.JsonErrorResponse;
 import org.createnet.raptor.models.tree.TreeNode;
@@ -34,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -68,6 +77,9 @@ public class TreeController {
     @Autowired
     private TreeService treeService;
 
+    @Autowired
+    private RaptorSecurity raptorSecurity;
+
     @RequestMapping(
             method = RequestMethod.POST
     )
@@ -93,7 +105,11 @@ public class TreeController {
             node.user(currentUser);
         }
 
-        treeService.save(node);
+        try {
+            treeService.save(node);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.entity(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
         log.debug("Added node {}", node.getId());
 
         return ResponseEntity.ok(node);
@@ -113,9 +129,7 @@ public class TreeController {
     public ResponseEntity<?> list(
             @AuthenticationPrincipal User currentUser
     ) {
-        TreeNode root = (new TreeNode()).id(null).user(currentUser);
-        List<TreeNode> roots = treeService.children(root);
-        List<TreeNode> nodes = roots.stream().map((n) -> treeService.tree(n)).collect(Collectors.toList());
+        List<TreeNode> nodes = treeService.trees(currentUser.getId());
         return ResponseEntity.ok(nodes);
     }
 
@@ -183,15 +197,19 @@ public class TreeController {
             return JsonErrorResponse.notFound("Node not found");
         }
 
-        nodes.stream().forEach((raw) -> {
+        Map<String, TreeNode> existing = new HashMap();
+        treeService.get(nodes.stream().map(TreeNode::getId).collect(Collectors.toList()))
+                .forEach((n) -> existing.put(n.getId(), n));
 
-            TreeNode node = treeService.get(raw.getId());
-            if (node == null) {
-                node = new TreeNode();
-            }
+        List<TreeNode> children = new ArrayList();
+        for (TreeNode raw : nodes) {
+
+            TreeNode node = existing.getOrDefault(raw.getId(), new TreeNode());
 
             node.merge(raw);
             node.parent(parent);
+            // nested nodes are stored only by the import
+            node.children().clear();
 
             if (node.getUserId() == null) {
                 node.user(currentUser);
@@ -200,9 +218,15 @@ public class TreeController {
                 node.user(currentUser);
             }
 
-            treeService.save(node);
-            log.debug("Added children {}", node.getId());
-        });
+            children.add(node);
+        }
+
+        try {
+            treeService.importTree(children);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.entity(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        log.debug("Added {} children to {}", children.size(), parent.getId());
 
         parent.children().clear();
         parent.children().addAll(nodes);
@@ -234,7 +258,11 @@ public class TreeController {
         raw.id(id);
         node.merge(raw);
         
-        treeService.save(node);
+        try {
+            treeService.save(node);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.entity(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
         log.debug("Updated node {}", node.getId());
 
         return ResponseEntity.ok(node);
@@ -267,6 +295,127 @@ public class TreeController {
         return ResponseEntity.accepted().build();
     }
     
+    @RequestMapping(
+            method = RequestMethod.DELETE,
+            value = {"/{nodeId}/tree"}
+    )
+    @ApiOperation(
+            value = "Delete a node and all its descendants",
+            notes = "",
+            nickname = "deleteTree"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'tree', 'delete', #nodeId)")
+    public ResponseEntity<?> deleteTree(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("nodeId") String nodeId
+    ) {
+
+        TreeNode node = treeService.get(nodeId);
+
+        if (node == null) {
+            return JsonErrorResponse.notFound();
+        }
+
+        int deleted = treeService.deleteTree(node);
+        log.debug("Deleted tree {} ({} nodes)", node.getId(), deleted);
+
+        return ResponseEntity.accepted().build();
+    }
+
+    @RequestMapping(
+            method = RequestMethod.POST,
+            value = "/import"
+    )
+    @ApiOperation(
+            value = "Import one or more trees",
+            notes = "Nested children are attached to the node containing them, top level nodes to their parentId if set. Existing nodes are replaced. The whole document is validated before being stored with a single bulk write.",
+            response = TreeNode.class,
+            responseContainer = "List",
+            nickname = "importTree"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'tree', 'create')")
+    public ResponseEntity<?> importTree(
+            @AuthenticationPrincipal User currentUser,
+            @RequestBody List<TreeNode> roots
+    ) {
+
+        List<TreeNode> nodes = treeService.flatten(roots);
+
+        for (TreeNode node : nodes) {
+            if (node.getUserId() == null) {
+                node.user(currentUser);
+            }
+            if (!currentUser.isAdmin() && !node.getUserId().equals(currentUser.getId())) {
+                node.user(currentUser);
+            }
+        }
+
+        if (!currentUser.isAdmin()) {
+            List<String> ids = nodes.stream().map(TreeNode::getId).collect(Collectors.toList());
+            for (TreeNode existing : treeService.get(ids)) {
+                if (!currentUser.getId().equals(existing.getUserId())) {
+                    return JsonErrorResponse.entity(HttpStatus.FORBIDDEN, "Cannot replace node " + existing.getId());
+                }
+            }
+            // top level nodes are attached to existing nodes, as add does
+            Set<String> parentIds = roots.stream()
+                    .map(TreeNode::getParentId)
+                    .filter((parentId) -> parentId != null && !ids.contains(parentId))
+                    .collect(Collectors.toSet());
+            for (String parentId : parentIds) {
+                if (!raptorSecurity.can(currentUser, EntityType.tree, Operation.update, parentId)) {
+                    return JsonErrorResponse.entity(HttpStatus.FORBIDDEN, "Cannot add nodes to " + parentId);
+                }
+            }
+        }
+
+        try {
+            treeService.importTree(roots);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.entity(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        log.debug("Imported {} nodes", nodes.size());
+
+        return ResponseEntity.ok(roots);
+    }
+
+    @RequestMapping(
+            method = RequestMethod.PUT,
+            value = {"/{parentId}/move"}
+    )
+    @ApiOperation(
+            value = "Move nodes with their subtree below a node",
+            notes = "The request body is the list of node ids to move",
+            response = TreeNode.class,
+            responseContainer = "List",
+            nickname = "move"
+    )
+    @PreAuthorize("@raptorSecurity.can(principal, 'tree', 'update', #parentId)")
+    public ResponseEntity<?> move(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable("parentId") String parentId,
+            @RequestBody List<String> ids
+    ) {
+
+        if (!currentUser.isAdmin()) {
+            for (TreeNode node : treeService.get(ids)) {
+                if (!currentUser.getId().equals(node.getUserId())) {
+                    return JsonErrorResponse.entity(HttpStatus.FORBIDDEN, "Cannot move node " + node.getId());
+                }
+            }
+        }
+
+        List<TreeNode> nodes;
+        try {
+            nodes = treeService.move(ids, parentId);
+        } catch (RaptorComponent.ValidationException ex) {
+            return JsonErrorResponse.entity(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        log.debug("Moved {} nodes below {}", nodes.size(), parentId);
+
+        return ResponseEntity.ok(nodes);
+    }
+
     @RequestMapping(method = RequestMethod.POST, value = "/search")
     @ApiOperation(value = "Search for tree nodes instances", notes = "", response = Page.class, nickname = "searchTreeNodes")
     @PreAuthorize("@raptorSecurity.can(principal, 'tree', 'read')")
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.configuration.TreeConfiguration;
+import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.payload.StreamPayload;
+import org.createnet.raptor.models.tree.TreeNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Merge the stream events propagated to a tree node over a time window.
+ *
+ * Events are grouped by node, device and stream. The first event of a group
+ * opens a window, at its end either the last event or a single event with
+ * all the records of the window is propagated.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class TreeEventCoalescer implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(TreeEventCoalescer.class);
+
+    static protected class Pending {
+
+        final TreeNode node;
+        StreamPayload last;
+        final List<RecordSet> records = new ArrayList();
+        // end of the window
+        ScheduledFuture<?> timer;
+
+        Pending(TreeNode node) {
+            this.node = node;
+        }
+
+    }
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private TreeNodeEventPublisher publisher;
+
+    private TreeConfiguration.PropagationConfiguration settings;
+    private ScheduledThreadPoolExecutor scheduler;
+
+    final private Map<String, Pending> pending = new ConcurrentHashMap();
+
+    final private LongAdder immediate = new LongAdder();
+    final private LongAdder merged = new LongAdder();
+    final private LongAdder published = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        settings = config.getTree().getPropagation();
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("tree-events-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        pending.keySet().forEach(this::flush);
+    }
+
+    /**
+     * Propagate a stream event to a node, merging it with the other events
+     * of the same stream if a window is set for the level of the node
+     *
+     * @param node
+     * @param level distance of the node from the device, 1 for the direct
+     * parent
+     * @param payload
+     */
+    public void notify(TreeNode node, int level, StreamPayload payload) {
+
+        long window = settings.getWindow(level);
+        if (window <= 0) {
+            immediate.increment();
+            publisher.notify(node, payload);
+            return;
+        }
+
+        String key = node.getId() + "/" + payload.getDeviceId() + "/" + payload.streamId;
+        boolean batch = settings.getMode() == TreeConfiguration.PropagationConfiguration.Mode.batch;
+
+        // a full batch is removed in the update and propagated right after
+        Pending[] full = new Pending[1];
+
+        pending.compute(key, (k, current) -> {
+            if (current == null) {
+                Pending created = new Pending(node);
+                created.timer = scheduler.schedule(() -> flush(k, created), window, TimeUnit.MILLISECONDS);
+                current = created;
+            } else {
+                merged.increment();
+            }
+            current.last = payload;
+            if (batch && payload.record != null) {
+                current.records.add(payload.record);
+            }
+            if (batch && current.records.size() >= settings.getMaxBatch()) {
+                full[0] = current;
+                return null;
+            }
+            return current;
+        });
+
+        if (full[0] != null) {
+            full[0].timer.cancel(false);
+            publish(full[0]);
+        }
+    }
+
+    /**
+     * Propagate the pending events of a group
+     *
+     * @param key
+     */
+    protected void flush(String key) {
+        Pending p = pending.remove(key);
+        if (p != null) {
+            publish(p);
+        }
+    }
+
+    /**
+     * Propagate the events of a window, unless already propagated as a full
+     * batch
+     *
+     * @param key
+     * @param p
+     */
+    protected void flush(String key, Pending p) {
+        if (pending.remove(key, p)) {
+            publish(p);
+        }
+    }
+
+    protected void publish(Pending p) {
+
+        StreamPayload payload = p.records.isEmpty() ? p.last : p.last.batch(p.records);
+
+        try {
+            publisher.notify(p.node, payload);
+            published.increment();
+        } catch (RuntimeException ex) {
+            log.warn("Cannot propagate events to node {}: {}", p.node.getId(), ex.getMessage());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("tree.events.immediate", immediate.sum()));
+        metrics.add(new Metric<>("tree.events.merged", merged.sum()));
+        metrics.add(new Metric<>("tree.events.published", published.sum()));
+        metrics.add(new Metric<>("tree.events.pending", pending.size()));
+        return metrics;
+    }
+
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.configuration.TreeConfiguration;
+import org.createnet.raptor.models.tree.TreeNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the tree structure (id, parent, owner and type of each
+ * node) used to resolve the parents of a node without querying the database.
+ *
+ * The index is loaded on startup and kept in sync by TreeService on save and
+ * delete. Changes made by other instances are received through
+ * TreeIndexSync, the periodic reload only recovers lost messages. Lookups are lock free map reads, changes are serialized so the
+ * ones applied during a reload are replayed on the new index.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class TreeIndex implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(TreeIndex.class);
+
+    /**
+     * Approximate size in bytes of the map nodes, table slots and entry of an
+     * indexed node on a 64 bit JVM with compressed oops, strings excluded
+     */
+    final protected static int NODE_SIZE = 144;
+
+    /**
+     * Approximate size in bytes of an empty string
+     */
+    final protected static int STRING_SIZE = 40;
+
+    static protected class Entry {
+
+        final String id;
+        final String parentId;
+        final String userId;
+        final EntityType type;
+
+        // false if parentId is the id instance of the parent entry
+        final boolean ownsParentId;
+
+        Entry(String id, String parentId, String userId, EntityType type, boolean ownsParentId) {
+            this.id = id;
+            this.parentId = parentId;
+            this.userId = userId;
+            this.type = type;
+            this.ownsParentId = ownsParentId;
+        }
+
+    }
+
+    static protected class State {
+
+        final Map<String, Entry> nodes = new ConcurrentHashMap();
+        final Map<String, Set<String>> children = new ConcurrentHashMap();
+        final Map<String, Set<String>> roots = new ConcurrentHashMap();
+        final Map<String, String> users = new ConcurrentHashMap();
+
+        final LongAdder chars = new LongAdder();
+        final LongAdder strings = new LongAdder();
+
+    }
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private volatile State state = new State();
+    private volatile boolean ready = false;
+
+    // changes applied while a reload is running, guarded by this
+    private List<Consumer<State>> pending;
+    private ScheduledExecutorService refresher;
+
+    final private LongAdder hits = new LongAdder();
+    final private LongAdder misses = new LongAdder();
+    private volatile long loadTime = 0;
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+
+        TreeConfiguration.IndexConfiguration settings = config.getTree().getIndex();
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        load();
+
+        if (settings.getRefresh() > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("tree-index-"));
+            refresher.scheduleWithFixedDelay(this::load, settings.getRefresh(), settings.getRefresh(), TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Return true once the index has been loaded
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Load the whole tree structure in a new index and swap it with the
+     * current one. Changes applied while loading are replayed on the new
+     * index before the swap.
+     */
+    public void load() {
+
+        long start = System.currentTimeMillis();
+
+        Query query = new Query();
+        query.fields().include("parentId").include("userId").include("type");
+
+        synchronized (this) {
+            pending = new ArrayList();
+        }
+
+        State loaded = new State();
+        try (CloseableIterator<TreeNode> it = mongoTemplate.stream(query, TreeNode.class)) {
+            it.forEachRemaining((node) -> put(loaded, node));
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                pending = null;
+            }
+            log.warn("Cannot load tree index: {}", ex.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            pending.forEach((change) -> change.accept(loaded));
+            pending = null;
+            state = loaded;
+        }
+
+        loadTime = System.currentTimeMillis() - start;
+        ready = true;
+
+        log.debug("Loaded tree index of {} nodes in {}ms", loaded.nodes.size(), loadTime);
+    }
+
+    /**
+     * Add or update a node
+     *
+     * @param node
+     */
+    public void put(TreeNode node) {
+        apply((s) -> put(s, node));
+    }
+
+    /**
+     * Apply a change to the index, recording it if a reload is running
+     *
+     * @param change
+     */
+    protected synchronized void apply(Consumer<State> change) {
+        change.accept(state);
+        if (pending != null) {
+            pending.add(change);
+        }
+    }
+
+    protected void put(State state, TreeNode node) {
+
+        Map<String, Entry> nodes = state.nodes;
+        Map<String, Set<String>> children = state.children;
+        Map<String, Set<String>> roots = state.roots;
+        Map<String, String> users = state.users;
+
+        // share the id strings between entries, map keys and children sets
+        Entry existing = nodes.get(node.getId());
+        String id = existing == null ? node.getId() : existing.id;
+
+        String parentId = node.getParentId();
+        Entry parent = parentId == null ? null : nodes.get(parentId);
+        if (parent != null) {
+            parentId = parent.id;
+        }
+
+        String userId = node.getUserId() == null ? null : users.computeIfAbsent(node.getUserId(), (u) -> u);
+        Entry entry = new Entry(id, parentId, userId, node.getType(), parentId != null && parent == null);
+
+        Entry previous = nodes.put(id, entry);
+        if (previous != null) {
+            unlink(state, id, previous);
+        } else {
+            count(state, id, 1);
+        }
+
+        if (entry.ownsParentId) {
+            count(state, parentId, 1);
+        }
+        if (entry.parentId == null) {
+            if (userId != null) {
+                roots.computeIfAbsent(userId, (k) -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        } else {
+            children.computeIfAbsent(entry.parentId, (k) -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    /**
+     * Remove a node, moving its children to its parent as TreeService does
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        apply((s) -> remove(s, id));
+    }
+
+    protected void remove(State state, String id) {
+
+        Entry entry = state.nodes.remove(id);
+        if (entry == null) {
+            return;
+        }
+
+        unlink(state, id, entry);
+        count(state, id, -1);
+
+        Set<String> orphans = state.children.remove(id);
+        if (orphans != null) {
+            for (String child : orphans) {
+                Entry c = state.nodes.get(child);
+                if (c != null) {
+                    put(state, new TreeNode(child).parentId(entry.parentId).userId(c.userId).type(c.type));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a node and all its descendants
+     *
+     * @param id
+     */
+    public void removeTree(String id) {
+        apply((s) -> removeTree(s, id));
+    }
+
+    protected void removeTree(State state, String id) {
+
+        Entry entry = state.nodes.get(id);
+        if (entry == null) {
+            return;
+        }
+        unlink(state, id, entry);
+
+        Deque<String> queue = new ArrayDeque();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            Entry e = state.nodes.remove(current);
+            if (e == null) {
+                continue;
+            }
+            count(state, current, -1);
+            // the parent of the root is released by unlink
+            if (e.ownsParentId && !current.equals(id)) {
+                count(state, e.parentId, -1);
+            }
+            Set<String> ids = state.children.remove(current);
+            if (ids != null) {
+                queue.addAll(ids);
+            }
+        }
+    }
+
+    protected void unlink(State state, String id, Entry entry) {
+        if (entry.ownsParentId) {
+            count(state, entry.parentId, -1);
+        }
+        Set<String> siblings = entry.parentId == null
+                ? (entry.userId == null ? null : state.roots.get(entry.userId))
+                : state.children.get(entry.parentId);
+        if (siblings != null) {
+            siblings.remove(id);
+        }
+    }
+
+    protected void count(State state, String value, int sign) {
+        if (value != null) {
+            state.strings.add(sign);
+            state.chars.add(sign * value.length());
+        }
+    }
+
+    /**
+     * Return true if the node is indexed
+     *
+     * @param id
+     * @return
+     */
+    public boolean contains(String id) {
+        return state.nodes.containsKey(id);
+    }
+
+    /**
+     * Return the id of the parent of a node
+     *
+     * @param id
+     * @return
+     */
+    public String getParentId(String id) {
+        Entry entry = state.nodes.get(id);
+        return entry == null ? null : entry.parentId;
+    }
+
+    /**
+     * Return the ids of the direct children of a node
+     *
+     * @param id
+     * @return
+     */
+    public Set<String> children(String id) {
+        Set<String> ids = state.children.get(id);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Return the ids of the top level nodes of an user
+     *
+     * @param userId
+     * @return
+     */
+    public Set<String> roots(String userId) {
+        Set<String> ids = state.roots.get(userId);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Return the ids of the ancestors of a node, from the root to the direct
+     * parent
+     *
+     * @param id
+     * @return the ancestors or null if the node is not indexed
+     */
+    public List<String> ancestors(String id) {
+
+        Map<String, Entry> nodes = state.nodes;
+
+        Entry entry = nodes.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        List<String> ancestors = new ArrayList();
+        String parentId = entry.parentId;
+        while (parentId != null && !parentId.equals(id)) {
+            if (ancestors.contains(parentId)) {
+                log.warn("Cycle in the parents of tree node {}", id);
+                break;
+            }
+            ancestors.add(0, parentId);
+            entry = nodes.get(parentId);
+            parentId = entry == null ? null : entry.parentId;
+        }
+
+        return ancestors;
+    }
+
+    /**
+     * Return the parents of a node as a chain of nodes with id, parent, owner
+     * and type set
+     *
+     * @param id
+     * @return the node or null if not indexed
+     */
+    public TreeNode parents(String id) {
+
+        List<String> ancestors = ancestors(id);
+        if (ancestors == null) {
+            return null;
+        }
+
+        TreeNode node = node(id, ancestors);
+        TreeNode curr = node;
+        for (int i = ancestors.size() - 1; i >= 0; i--) {
+            TreeNode parent = node(ancestors.get(i), ancestors.subList(0, i));
+            if (parent == null) {
+                break;
+            }
+            curr.parent(parent);
+            curr = parent;
+        }
+
+        return node;
+    }
+
+    protected TreeNode node(String id, List<String> ancestors) {
+        Entry entry = state.nodes.get(id);
+        if (entry == null) {
+            return null;
+        }
+        return new TreeNode(id)
+                .parentId(entry.parentId)
+                .userId(entry.userId)
+                .type(entry.type)
+                .ancestors(new ArrayList(ancestors));
+    }
+
+    public int size() {
+        return state.nodes.size();
+    }
+
+    /**
+     * Estimate the heap used by the index
+     *
+     * @return size in bytes
+     */
+    public long memory() {
+        State state = this.state;
+        return (long) state.nodes.size() * NODE_SIZE + state.strings.sum() * STRING_SIZE + state.chars.sum() * 2;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList();
+
+        int size = size();
+        long memory = memory();
+
+        metrics.add(new Metric<>("tree.index.nodes", size));
+        metrics.add(new Metric<>("tree.index.users", state.users.size()));
+        metrics.add(new Metric<>("tree.index.memory", memory));
+        metrics.add(new Metric<>("tree.index.memoryPer100k", size == 0 ? 0 : memory * 100000 / size));
+        metrics.add(new Metric<>("tree.index.hits", hits.sum()));
+        metrics.add(new Metric<>("tree.index.misses", misses.sum()));
+        metrics.add(new Metric<>("tree.index.loadTime", loadTime));
+
+        return metrics;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.tree;
+
+import org.createnet.raptor.common.configuration.MqttConfiguration;
+import org.createnet.raptor.sdk.Topics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+
+/**
+ * Subscribe to the tree changes broadcast by the other instances when
+ * `tree.index.enabled` is set
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "raptor.tree.index", name = "enabled", matchIfMissing = true)
+public class TreeIndexConfiguration {
+
+    @Autowired
+    private MqttPahoClientFactory mqttClientFactory;
+
+    @Autowired
+    private TreeIndexSync treeIndexSync;
+
+    @Bean
+    public MessageChannel treeIndexChannel() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    @ServiceActivator(inputChannel = "treeIndexChannel")
+    public MessageHandler treeIndexHandler() {
+        return (message) -> {
+            treeIndexSync.handle((String) message.getHeaders().get(MqttHeaders.TOPIC), (byte[]) message.getPayload());
+        };
+    }
+
+    @Bean
+    public MessageProducer treeIndexClient() {
+        // not shared, every instance keeps its own index
+        return MqttConfiguration.inboundAdapter(mqttClientFactory, treeIndexChannel(), 1, Topics.treeIndex(Topics.ANY));
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.tree;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import org.createnet.raptor.common.dispatcher.BrokerClient;
+import org.createnet.raptor.common.dispatcher.transport.DispatcherTransport;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.configuration.DispatcherConfiguration;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.tree.TreeNode;
+import org.createnet.raptor.sdk.Topics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Broadcast the structural changes of the tree (save, move, import and
+ * delete) to the other instances, which apply them to their TreeIndex
+ * without waiting for the periodic reload.
+ *
+ * Changes are published on `tree-index/{instance}`, every instance
+ * subscribes to all of them without a shared group and skips its own.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class TreeIndexSync implements PublicMetrics {
+
+    final private Logger log = LoggerFactory.getLogger(TreeIndexSync.class);
+
+    /**
+     * Max nodes per message
+     */
+    final public static int MAX_NODES = 1000;
+
+    final private static ObjectMapper mapper = new ObjectMapper();
+
+    public enum Op {
+        put, remove, removeTree
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Node {
+
+        public String id;
+        public String parentId;
+        public String userId;
+        public EntityType type;
+
+        public Node() {
+        }
+
+        public Node(TreeNode node) {
+            this.id = node.getId();
+            this.parentId = node.getParentId();
+            this.userId = node.getUserId();
+            this.type = node.getType();
+        }
+
+        public TreeNode toTreeNode() {
+            return new TreeNode(id).parentId(parentId).userId(userId).type(type);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Change {
+
+        public Op op;
+        public List<Node> nodes = new ArrayList();
+        public String id;
+
+        public Change() {
+        }
+
+        public Change(Op op) {
+            this.op = op;
+        }
+    }
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private BrokerClient brokerClient;
+
+    @Autowired
+    private TreeIndex index;
+
+    final private String topic = Topics.treeIndex(UUID.randomUUID().toString());
+
+    final private LongAdder sent = new LongAdder();
+    final private LongAdder received = new LongAdder();
+    final private LongAdder failed = new LongAdder();
+
+    /**
+     * Broadcast added, updated or moved nodes
+     *
+     * @param nodes
+     */
+    public void put(Collection<TreeNode> nodes) {
+        Change change = new Change(Op.put);
+        for (TreeNode node : nodes) {
+            change.nodes.add(new Node(node));
+            if (change.nodes.size() == MAX_NODES) {
+                publish(change);
+                change = new Change(Op.put);
+            }
+        }
+        if (!change.nodes.isEmpty()) {
+            publish(change);
+        }
+    }
+
+    /**
+     * Broadcast the removal of a node, its children moved to its parent
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        Change change = new Change(Op.remove);
+        change.id = id;
+        publish(change);
+    }
+
+    /**
+     * Broadcast the removal of a node and its descendants
+     *
+     * @param id
+     */
+    public void removeTree(String id) {
+        Change change = new Change(Op.removeTree);
+        change.id = id;
+        publish(change);
+    }
+
+    /**
+     * Return false if the index is disabled or no broker is used
+     *
+     * @return
+     */
+    protected boolean isEnabled() {
+        if (!config.getTree().getIndex().isEnabled()) {
+            return false;
+        }
+        DispatcherConfiguration dispatcher = config.getDispatcher();
+        return !DispatcherTransport.LOCAL.equals(dispatcher.getProtocol()) || dispatcher.isForward();
+    }
+
+    protected void publish(Change change) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            brokerClient.sendMessage(topic, mapper.writeValueAsBytes(change));
+            sent.increment();
+        } catch (Exception ex) {
+            failed.increment();
+            log.warn("Cannot broadcast tree index change: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Apply a change received from another instance
+     *
+     * @param from topic of the message
+     * @param raw
+     */
+    public void handle(String from, byte[] raw) {
+
+        if (topic.equals(from) || !config.getTree().getIndex().isEnabled()) {
+            return;
+        }
+
+        Change change;
+        try {
+            change = mapper.readValue(raw, Change.class);
+        } catch (Exception ex) {
+            failed.increment();
+            log.warn("Skip invalid tree index change: {}", ex.getMessage());
+            return;
+        }
+
+        if (change.op == null) {
+            return;
+        }
+
+        switch (change.op) {
+            case put:
+                change.nodes.forEach((n) -> index.put(n.toTreeNode()));
+                break;
+            case remove:
+                index.remove(change.id);
+                break;
+            case removeTree:
+                index.removeTree(change.id);
+                break;
+        }
+
+        received.increment();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList();
+        metrics.add(new Metric<>("tree.index.sync.sent", sent.sum()));
+        metrics.add(new Metric<>("tree.index.sync.received", received.sum()));
+        metrics.add(new Metric<>("tree.index.sync.failed", failed.sum()));
+        return metrics;
+    }
+
+}
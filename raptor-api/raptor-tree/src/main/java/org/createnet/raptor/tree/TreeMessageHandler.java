@@ -15,8 +15,10 @@
  */
 package org.createnet.raptor.tree;
 
+import java.util.EnumSet;
+import java.util.Set;
 import org.createnet.raptor.common.dispatcher.RaptorMessageHandler;
-import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.payload.ActionPayload;
 import org.createnet.raptor.models.payload.DevicePayload;
 import org.createnet.raptor.models.payload.DispatcherPayload;
@@ -43,6 +45,16 @@ public class TreeMessageHandler implements RaptorMessageHandler {
     @Autowired
     private TreeNodeEventPublisher treeNodePublisher;
 
+    @Autowired
+    private TreeEventCoalescer coalescer;
+
+    final private Set<EntityType> types = EnumSet.of(EntityType.device, EntityType.action, EntityType.stream);
+
+    @Override
+    public Set<EntityType> getTypes() {
+        return types;
+    }
+
     @Override
     public void handle(DispatcherPayload dispatcherPayload, MessageHeaders headers) {
 
@@ -64,16 +76,14 @@ public class TreeMessageHandler implements RaptorMessageHandler {
     }
     
     protected void handleAction(ActionPayload payload) {
-        Device device = payload.getDevice();
-        TreeNode node = treeService.get(device.getId());
+        TreeNode node = treeService.parents(payload.getDeviceId());
         if (node != null) {
             notifyParent(node, payload);
         }
     }
     
     protected void handleStream(StreamPayload payload) {
-        Device device = payload.getDevice();
-        TreeNode node = treeService.get(device.getId());
+        TreeNode node = treeService.parents(payload.getDeviceId());
         if (node != null) {
             notifyParent(node, payload);
         }
@@ -100,17 +110,29 @@ public class TreeMessageHandler implements RaptorMessageHandler {
                 break;
         }
 
-        notifyParent(node, payload);
+        notifyParent(treeService.parents(node), payload);
         
     }
 
+    /**
+     * Notify the parents of a node, which must be already linked to it.
+     * Stream events may be coalesced, other events are sent immediately
+     *
+     * @param node
+     * @param payload
+     */
     protected void notifyParent(TreeNode node, DispatcherPayload payload) {
-        TreeNode parents = treeService.parents(node);
-        TreeNode parent = parents.getParent();
+        TreeNode parent = node.getParent();
+        int level = 1;
         while (parent != null) {
             log.debug("Notifiyng {} ({})", parent.getId(), parent.path());
-            treeNodePublisher.notify(parent, payload);
+            if (payload instanceof StreamPayload) {
+                coalescer.notify(parent, level, (StreamPayload) payload);
+            } else {
+                treeNodePublisher.notify(parent, payload);
+            }
             parent = parent.getParent();
+            level++;
         }
     }
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.createnet.raptor.models.configuration.RaptorConfiguration;
+import org.createnet.raptor.models.tree.TreeNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fill the ancestors of the tree nodes stored by previous versions, walking
+ * the parentId references in memory. Only the missing ancestors are set, so
+ * concurrent edits are not overwritten.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@Component
+public class TreeMigration {
+
+    final private Logger log = LoggerFactory.getLogger(TreeMigration.class);
+
+    @Autowired
+    private RaptorConfiguration config;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        if (config.getTree().isMigrateAncestors()) {
+            migrateAncestors();
+        }
+    }
+
+    /**
+     * Set the ancestors of the nodes missing them
+     *
+     * @return the amount of migrated nodes
+     */
+    public int migrateAncestors() {
+
+        Query missing = Query.query(Criteria.where("ancestors").exists(false));
+        List<TreeNode> nodes = mongoTemplate.find(missing, TreeNode.class);
+        if (nodes.isEmpty()) {
+            return 0;
+        }
+
+        log.info("Set ancestors of {} tree nodes", nodes.size());
+
+        Query all = new Query();
+        all.fields().include("parentId");
+
+        Map<String, String> parents = new HashMap();
+        mongoTemplate.find(all, TreeNode.class).forEach((n) -> parents.put(n.getId(), n.getParentId()));
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TreeNode.class);
+
+        for (TreeNode node : nodes) {
+
+            List<String> ancestors = new ArrayList();
+            Set<String> visited = new HashSet();
+            visited.add(node.getId());
+
+            String parentId = node.getParentId();
+            while (parentId != null && parents.containsKey(parentId)) {
+                if (!visited.add(parentId)) {
+                    log.warn("Cycle in the parents of tree node {}", node.getId());
+                    break;
+                }
+                ancestors.add(0, parentId);
+                parentId = parents.get(parentId);
+            }
+
+            // only the ancestors, and only if still missing, as other
+            // instances may be migrating or editing the same nodes
+            bulk.updateOne(
+                    Query.query(Criteria.where("id").is(node.getId()).and("ancestors").exists(false)),
+                    Update.update("ancestors", ancestors)
+            );
+        }
+
+        bulk.execute();
+
+        return nodes.size();
+    }
+
+}
@@ -17,12 +17,30 @@ package org.createnet.raptor.tree;
 
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
+import com.mongodb.WriteResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.createnet.raptor.models.objects.RaptorComponent;
 import org.createnet.raptor.models.tree.QTreeNode;
 import org.createnet.raptor.models.tree.TreeNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 /**
@@ -35,6 +53,15 @@ public class TreeService {
     @Autowired
     private TreeRepository repository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TreeIndex index;
+
+    @Autowired
+    private TreeIndexSync indexSync;
+
     /**
      * Return a single node by id
      *
@@ -106,42 +133,111 @@ public class TreeService {
     }
 
     /**
-     * Return the subtree of the node
+     * Return the subtree of the node, loaded with a single query on the
+     * ancestors
      *
      * @param node
      * @return
      */
     public TreeNode subtree(TreeNode node) {
 
-        // find the direct children
-        List<TreeNode> children = children(node);
+        QTreeNode q = new QTreeNode("node");
 
-        children.forEach((n) -> {
-            subtree(n);
-        });
+        List<TreeNode> descendants = repository.findAll(
+                q.userId.eq(node.getUserId()).and(q.ancestors.contains(node.getId()))
+        );
 
-        node.children().addAll(children);
+        return assemble(node, descendants);
+    }
 
-        return node;
+    /**
+     * Link a list of nodes to their parent, starting from the provided root.
+     * Nodes whose parent is not in the list are skipped.
+     *
+     * @param root
+     * @param nodes
+     * @return
+     */
+    protected TreeNode assemble(TreeNode root, List<TreeNode> nodes) {
+
+        Map<String, TreeNode> index = new HashMap();
+        index.put(root.getId(), root);
+        nodes.forEach((n) -> index.put(n.getId(), n));
+
+        // parents come before their children, siblings by order
+        nodes.sort(Comparator.comparingInt((TreeNode n) -> n.getAncestors().size()).thenComparingLong(TreeNode::getOrder));
+
+        nodes.forEach((n) -> {
+            TreeNode parent = index.get(n.getParentId());
+            if (parent != null) {
+                n.parent(parent);
+                parent.children().add(n);
+            }
+        });
+
+        return root;
     }
 
     /**
-     * Return the parents of a node
+     * Return the parents of a node, loaded with a single query on the
+     * ancestors
      *
      * @param node
      * @return
      */
     public TreeNode parents(TreeNode node) {
-        
+
+        if (node.getAncestors().isEmpty()) {
+            return node;
+        }
+
+        Map<String, TreeNode> index = new HashMap();
+        get(node.getAncestors()).forEach((n) -> index.put(n.getId(), n));
+
         TreeNode curr = node;
-        TreeNode parent = parent(curr);
-        while(parent != null) {
-            
+        for (int i = node.getAncestors().size() - 1; i >= 0; i--) {
+            TreeNode parent = index.get(node.getAncestors().get(i));
+            if (parent == null) {
+                break;
+            }
             curr.parent(parent);
-            
             curr = parent;
-            parent = parent(curr);
+        }
+
+        return node;
+    }
+
+    /**
+     * Return a node linked to its parents, resolved from the in-memory index
+     * once loaded. Nodes from the index have only id, parent, owner, type and
+     * ancestors set. Nodes missing from the index are loaded from the database
+     * and indexed.
+     *
+     * @param id
+     * @return the node or null if not found
+     */
+    public TreeNode parents(String id) {
 
+        if (index.isReady()) {
+            TreeNode indexed = index.parents(id);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+
+        TreeNode node = get(id);
+        if (node == null) {
+            return null;
+        }
+
+        parents(node);
+
+        if (index.isReady()) {
+            List<TreeNode> chain = new ArrayList();
+            for (TreeNode curr = node; curr != null; curr = curr.getParent()) {
+                chain.add(0, curr);
+            }
+            chain.forEach(index::put);
         }
 
         return node;
@@ -165,23 +261,18 @@ public class TreeService {
     }
 
     /**
-     * Return the root of the node
+     * Return the root of the node or null if the node is a root
      *
      * @param node
      * @return
      */
     public TreeNode root(TreeNode node) {
 
-        if (node == null) {
-            return null;
-        }
-
-        TreeNode parent = parent(node);
-        if (parent == null) {
+        if (node == null || node.getAncestors().isEmpty()) {
             return null;
         }
 
-        return root(parent);
+        return get(node.getRootId());
     }
 
     /**
@@ -220,6 +311,31 @@ public class TreeService {
         return subtree(root);
     }
 
+    /**
+     * Return all the trees of an user, loaded with a single query
+     *
+     * @param userId
+     * @return
+     */
+    public List<TreeNode> trees(String userId) {
+
+        QTreeNode q = new QTreeNode("node");
+
+        // virtual root linking the top level nodes
+        TreeNode root = new TreeNode();
+        List<TreeNode> nodes = repository.findAll(q.userId.eq(userId));
+        nodes.stream()
+                .filter((n) -> n.getParentId() == null)
+                .forEach((n) -> n.parentId(root.getId()));
+
+        assemble(root, nodes);
+
+        List<TreeNode> roots = new ArrayList(root.children());
+        roots.forEach((n) -> n.parent(null));
+
+        return roots;
+    }
+
     /**
      * Return the whole tree a node belongs to
      *
@@ -249,13 +365,232 @@ public class TreeService {
     }
 
     /**
-     * Save a node
+     * Save a node, updating its ancestors and the ones of its descendants if
+     * it has been moved
      *
      * @param node
      * @return
      */
     public TreeNode save(TreeNode node) {
-        return repository.save(node);
+
+        List<String> ancestors = new ArrayList();
+        if (node.getParentId() != null) {
+
+            if (node.getParentId().equals(node.getId())) {
+                throw new RaptorComponent.ValidationException("A node cannot be its own parent");
+            }
+
+            TreeNode parent = get(node.getParentId());
+            if (parent == null) {
+                throw new RaptorComponent.ValidationException("Parent node not found: " + node.getParentId());
+            }
+            if (parent.getAncestors().contains(node.getId())) {
+                throw new RaptorComponent.ValidationException("A node cannot be moved below its descendants");
+            }
+
+            ancestors.addAll(parent.getAncestors());
+            ancestors.add(parent.getId());
+        }
+
+        TreeNode previous = get(node.getId());
+        node.ancestors(ancestors);
+        TreeNode saved = repository.save(node);
+        index.put(saved);
+        indexSync.put(Collections.singletonList(saved));
+
+        if (previous != null && !previous.getAncestors().equals(ancestors)) {
+            Map<String, List<String>> moved = new HashMap();
+            moved.put(saved.getId(), ancestors);
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TreeNode.class);
+            if (relink(moved, moved.keySet(), bulk) > 0) {
+                bulk.execute();
+            }
+        }
+
+        return saved;
+    }
+
+    /**
+     * Recompute the ancestors of the descendants of moved nodes, adding the
+     * updates to a bulk operation
+     *
+     * @param known new ancestors by id of the nodes already written
+     * @param moved ids of the nodes whose ancestors changed
+     * @param bulk
+     * @return the amount of updates added
+     */
+    protected int relink(Map<String, List<String>> known, Collection<String> moved, BulkOperations bulk) {
+
+        if (moved.isEmpty()) {
+            return 0;
+        }
+
+        Query query = Query.query(Criteria.where("ancestors").in(moved).and("id").nin(known.keySet()));
+        List<TreeNode> descendants = mongoTemplate.find(query, TreeNode.class);
+
+        // parents come before their children
+        descendants.sort(Comparator.comparingInt((TreeNode n) -> n.getAncestors().size()));
+
+        int updates = 0;
+        for (TreeNode n : descendants) {
+
+            List<String> parentAncestors = known.get(n.getParentId());
+            if (parentAncestors == null) {
+                continue;
+            }
+
+            List<String> ancestors = new ArrayList(parentAncestors);
+            ancestors.add(n.getParentId());
+            known.put(n.getId(), ancestors);
+
+            bulk.updateOne(Query.query(Criteria.where("id").is(n.getId())), Update.update("ancestors", ancestors));
+            updates++;
+        }
+
+        return updates;
+    }
+
+    /**
+     * Return the nodes of a list of trees, parents first
+     *
+     * @param roots
+     * @return
+     */
+    public List<TreeNode> flatten(List<TreeNode> roots) {
+        List<TreeNode> nodes = new ArrayList();
+        Deque<TreeNode> queue = new ArrayDeque(roots);
+        while (!queue.isEmpty()) {
+            TreeNode node = queue.poll();
+            nodes.add(node);
+            queue.addAll(node.children());
+        }
+        return nodes;
+    }
+
+    /**
+     * Import a list of trees with a single bulk write. Nested children are
+     * attached to the node containing them, top level nodes to their
+     * parentId if set. Existing nodes are replaced.
+     *
+     * @param roots
+     * @return the imported trees
+     */
+    public List<TreeNode> importTree(List<TreeNode> roots) {
+
+        Map<String, List<String>> known = new HashMap();
+        Map<String, TreeNode> parents = new HashMap();
+
+        List<String> parentIds = roots.stream()
+                .map(TreeNode::getParentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        get(parentIds).forEach((p) -> parents.put(p.getId(), p));
+
+        for (TreeNode root : roots) {
+            List<String> ancestors = new ArrayList();
+            if (root.getParentId() != null) {
+                TreeNode parent = parents.get(root.getParentId());
+                if (parent == null) {
+                    throw new RaptorComponent.ValidationException("Parent node not found: " + root.getParentId());
+                }
+                ancestors.addAll(parent.getAncestors());
+                ancestors.add(parent.getId());
+            }
+            root.ancestors(ancestors);
+        }
+
+        List<TreeNode> nodes = flatten(roots);
+        for (TreeNode node : nodes) {
+
+            node.validate();
+            if (known.put(node.getId(), node.getAncestors()) != null) {
+                throw new RaptorComponent.ValidationException("Duplicated node: " + node.getId());
+            }
+
+            List<String> ancestors = new ArrayList(node.getAncestors());
+            ancestors.add(node.getId());
+            node.children().forEach((child) -> child.parentId(node.getId()).ancestors(new ArrayList(ancestors)));
+        }
+
+        for (TreeNode parent : parents.values()) {
+            if (known.containsKey(parent.getId()) || parent.getAncestors().stream().anyMatch(known::containsKey)) {
+                throw new RaptorComponent.ValidationException("A node cannot be moved below its descendants");
+            }
+        }
+
+        List<String> existing = new ArrayList();
+        List<String> moved = new ArrayList();
+        get(known.keySet()).forEach((n) -> {
+            existing.add(n.getId());
+            if (!n.getAncestors().equals(known.get(n.getId()))) {
+                moved.add(n.getId());
+            }
+        });
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, TreeNode.class);
+        if (!existing.isEmpty()) {
+            bulk.remove(Query.query(Criteria.where("id").in(existing)));
+        }
+        bulk.insert(nodes);
+        relink(known, moved, bulk);
+        bulk.execute();
+
+        nodes.forEach(index::put);
+        indexSync.put(nodes);
+
+        return roots;
+    }
+
+    /**
+     * Move a list of nodes with their subtrees below a parent, with a single
+     * bulk write
+     *
+     * @param ids
+     * @param parentId the new parent, null to move to the top level
+     * @return the moved nodes
+     */
+    public List<TreeNode> move(List<String> ids, String parentId) {
+
+        List<String> ancestors = new ArrayList();
+        if (parentId != null) {
+
+            TreeNode parent = get(parentId);
+            if (parent == null) {
+                throw new RaptorComponent.ValidationException("Parent node not found: " + parentId);
+            }
+            if (ids.contains(parentId) || parent.getAncestors().stream().anyMatch(ids::contains)) {
+                throw new RaptorComponent.ValidationException("A node cannot be moved below its descendants");
+            }
+
+            ancestors.addAll(parent.getAncestors());
+            ancestors.add(parentId);
+        }
+
+        List<TreeNode> nodes = new ArrayList();
+        get(ids).forEach(nodes::add);
+        if (nodes.size() != new HashSet(ids).size()) {
+            throw new RaptorComponent.ValidationException("Node not found");
+        }
+
+        Map<String, List<String>> known = new HashMap();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TreeNode.class);
+
+        for (TreeNode node : nodes) {
+            node.parentId(parentId).ancestors(new ArrayList(ancestors));
+            known.put(node.getId(), node.getAncestors());
+            bulk.updateOne(
+                    Query.query(Criteria.where("id").is(node.getId())),
+                    Update.update("parentId", parentId).set("ancestors", node.getAncestors())
+            );
+        }
+
+        relink(known, new ArrayList(known.keySet()), bulk);
+        bulk.execute();
+
+        nodes.forEach(index::put);
+        indexSync.put(nodes);
+
+        return nodes;
     }
 
     /**
@@ -274,24 +609,43 @@ public class TreeService {
     }
 
     /**
-     * Delete a node
+     * Delete a node, moving its children to its parent
      *
      * @param node
      */
     public void delete(final TreeNode node) {
 
-        final List<TreeNode> children = children(node);
-        if (!children.isEmpty()) {
-            children.stream().forEach((child) -> {
-                String parentId = node.getParentId() != null ? node.getParentId(): null;
-                child.parentId(parentId);
-            });
-            repository.save(children);
-        }
+        Query descendants = Query.query(Criteria.where("ancestors").is(node.getId()));
+        mongoTemplate.updateMulti(descendants, new Update().pull("ancestors", node.getId()), TreeNode.class);
+
+        Query children = Query.query(Criteria.where("parentId").is(node.getId()));
+        mongoTemplate.updateMulti(children, Update.update("parentId", node.getParentId()), TreeNode.class);
 
         repository.delete(node);
+        index.remove(node.getId());
+        indexSync.remove(node.getId());
     }
     
+    /**
+     * Delete a node and all its descendants in a single pass
+     *
+     * @param node
+     * @return the amount of deleted nodes
+     */
+    public int deleteTree(TreeNode node) {
+
+        Query query = Query.query(new Criteria().orOperator(
+                Criteria.where("id").is(node.getId()),
+                Criteria.where("ancestors").is(node.getId())
+        ));
+
+        WriteResult result = mongoTemplate.remove(query, TreeNode.class);
+        index.removeTree(node.getId());
+        indexSync.removeTree(node.getId());
+
+        return result.getN();
+    }
+
     public Page<TreeNode> search(Predicate predicate, Pageable pageable) {
         return repository.findAll(predicate, pageable);
     }
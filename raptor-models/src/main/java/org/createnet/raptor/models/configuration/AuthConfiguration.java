@@ -34,6 +34,10 @@ public class AuthConfiguration {
     private String defaultToken = "service-default";
     private String secret;
     private int expiration = 1800;
+    // verify signed tokens with the secret instead of calling the auth API
+    private boolean localVerification = false;
+    private CacheSettings principalCache = new CacheSettings();
+    private AuthorizationCacheSettings authorizationCache = new AuthorizationCacheSettings();
 
     public boolean userHasLock(final String username) {
         return getUsers().stream().filter(u -> u.getUsername() != null && u.getUsername().equals(username)).filter(u -> u.isLocked()).count() == 1;
@@ -44,6 +48,78 @@ public class AuthConfiguration {
         return user.isPresent() ? user.get() : null;
     }
     
+    /**
+     * Local cache settings
+     */
+    public static class CacheSettings {
+
+        private boolean enabled = true;
+
+        // time to live in seconds
+        private int ttl = 60;
+
+        // max amount of entries
+        private int maxSize = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(int ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+    }
+
+    /**
+     * Authorization decisions cache settings
+     */
+    public static class AuthorizationCacheSettings extends CacheSettings {
+
+        // time to live in seconds of denied requests
+        private int negativeTtl = 5;
+
+        // query the auth API anyway and log the mismatching decisions
+        private boolean shadow = false;
+
+        public AuthorizationCacheSettings() {
+            setTtl(10);
+        }
+
+        public int getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public void setNegativeTtl(int negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+
+        public boolean isShadow() {
+            return shadow;
+        }
+
+        public void setShadow(boolean shadow) {
+            this.shadow = shadow;
+        }
+
+    }
+
     public static class AdminUser {
 
         private String username;
@@ -168,4 +244,28 @@ public class AuthConfiguration {
         this.defaultToken = defaultToken;
     }
     
+    public boolean isLocalVerification() {
+        return localVerification;
+    }
+
+    public void setLocalVerification(boolean localVerification) {
+        this.localVerification = localVerification;
+    }
+
+    public CacheSettings getPrincipalCache() {
+        return principalCache;
+    }
+
+    public void setPrincipalCache(CacheSettings principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    public AuthorizationCacheSettings getAuthorizationCache() {
+        return authorizationCache;
+    }
+
+    public void setAuthorizationCache(AuthorizationCacheSettings authorizationCache) {
+        this.authorizationCache = authorizationCache;
+    }
+
 }
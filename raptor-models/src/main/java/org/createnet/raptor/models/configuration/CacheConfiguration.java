@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.configuration;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CacheConfiguration {
+
+    /**
+     * Device definitions cache settings
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class DeviceCacheConfiguration {
+
+        private boolean enabled = true;
+
+        // time to live in seconds
+        private int ttl = 300;
+
+        // max amount of devices
+        private int maxSize = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(int ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+    }
+
+    /**
+     * Sizing and expiration of a Spring managed cache
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class CacheSettings {
+
+        // max amount of entries on heap
+        private int heap = 10000;
+
+        // off-heap size in MB, not supported as the cached values are not
+        // serializable, must be 0
+        private int offheap = 0;
+
+        // time to live in seconds after a write, 0 to disable
+        private int ttl = 300;
+
+        // time to idle in seconds after a read, 0 to disable. Reads do not
+        // extend an entry past its time to live
+        private int tti = 0;
+
+        public int getHeap() {
+            return heap;
+        }
+
+        public void setHeap(int heap) {
+            this.heap = heap;
+        }
+
+        public int getOffheap() {
+            return offheap;
+        }
+
+        public void setOffheap(int offheap) {
+            this.offheap = offheap;
+        }
+
+        public int getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(int ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getTti() {
+            return tti;
+        }
+
+        public void setTti(int tti) {
+            this.tti = tti;
+        }
+
+    }
+
+    private DeviceCacheConfiguration devices = new DeviceCacheConfiguration();
+
+    private Map<String, CacheSettings> caches = new HashMap();
+
+    public CacheConfiguration() {
+        caches.put("inventory", new CacheSettings());
+    }
+
+    public DeviceCacheConfiguration getDevices() {
+        return devices;
+    }
+
+    public void setDevices(DeviceCacheConfiguration devices) {
+        this.devices = devices;
+    }
+
+    public Map<String, CacheSettings> getCaches() {
+        return caches;
+    }
+
+    public void setCaches(Map<String, CacheSettings> caches) {
+        this.caches = caches;
+    }
+
+}
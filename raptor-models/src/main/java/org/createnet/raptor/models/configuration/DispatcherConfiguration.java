@@ -16,6 +16,7 @@
 package org.createnet.raptor.models.configuration;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.createnet.raptor.models.data.DataFormat;
 
 /**
  *
@@ -24,15 +25,167 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class DispatcherConfiguration {
 
+    // event transport: mqtt or local, to deliver in process
     private String protocol;
 
+    // with the local protocol, also publish the events to the broker for
+    // external subscribers
+    private boolean forward = true;
+
     private String username;
     private String password;
 
     private String uri;
 
-    private int queueLength;
-    private int poolSize;
+    /**
+     * What to do when the outbound queue is full
+     */
+    public enum OverflowPolicy {
+        // discard the message
+        drop,
+        // wait up to blockTimeout for space, then discard
+        block
+    }
+
+    /**
+     * Dispatch of the local application events
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class EventsConfiguration {
+
+        // run the listeners on the lanes instead of the publisher thread
+        private boolean async = false;
+
+        // amount of lanes, events of a device always use the same one
+        private int lanes = 4;
+
+        // max amount of events waiting per lane, publishers block when full
+        private int queueLength = 1000;
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public int getLanes() {
+            return lanes;
+        }
+
+        public void setLanes(int lanes) {
+            this.lanes = lanes;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public void setQueueLength(int queueLength) {
+            this.queueLength = queueLength;
+        }
+
+    }
+
+    private EventsConfiguration events = new EventsConfiguration();
+
+    /**
+     * Inbound MQTT consumers of the services
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ConsumerConfiguration {
+
+        // shared subscription group, replicas of the same service split the
+        // messages. Empty to receive every message on each replica
+        private String sharedGroup = "";
+
+        private int qos = 2;
+
+        // amount of handler threads, messages of a device always use the same
+        // one. With 1 messages are handled on the MQTT client thread
+        private int partitions = 1;
+
+        // max amount of messages waiting per partition, the client blocks when full
+        private int queueLength = 1000;
+
+        // threads running the handlers which opt into parallel execution
+        private int handlerPoolSize = 4;
+
+        // max amount of parallel handler calls waiting, then the caller runs them
+        private int handlerQueueLength = 1000;
+
+        public String getSharedGroup() {
+            return sharedGroup;
+        }
+
+        public void setSharedGroup(String sharedGroup) {
+            this.sharedGroup = sharedGroup;
+        }
+
+        public int getQos() {
+            return qos;
+        }
+
+        public void setQos(int qos) {
+            this.qos = qos;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public void setQueueLength(int queueLength) {
+            this.queueLength = queueLength;
+        }
+
+        public int getHandlerPoolSize() {
+            return handlerPoolSize;
+        }
+
+        public void setHandlerPoolSize(int handlerPoolSize) {
+            this.handlerPoolSize = handlerPoolSize;
+        }
+
+        public int getHandlerQueueLength() {
+            return handlerQueueLength;
+        }
+
+        public void setHandlerQueueLength(int handlerQueueLength) {
+            this.handlerQueueLength = handlerQueueLength;
+        }
+
+    }
+
+    private ConsumerConfiguration consumer = new ConsumerConfiguration();
+
+    // omit the device definition from the payloads sent to stream and action topics
+    private boolean compactPayload = false;
+
+    // encoding of the published payloads, subscribers must support it
+    private DataFormat payloadFormat = DataFormat.json;
+
+    // publish from dedicated threads instead of the caller thread
+    private boolean async = false;
+
+    // max amount of messages waiting to be published
+    private int queueLength = 10000;
+
+    // amount of publisher threads, messages of a topic always use the same one
+    private int poolSize = 2;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.drop;
+
+    // max time in milliseconds the caller waits with the block policy
+    private int blockTimeout = 1000;
 
     public int getQueueLength() {
         return queueLength;
@@ -42,6 +195,38 @@ public class DispatcherConfiguration {
         return poolSize;
     }
 
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(int blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public boolean isForward() {
+        return forward;
+    }
+
+    public void setForward(boolean forward) {
+        this.forward = forward;
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -82,4 +267,36 @@ public class DispatcherConfiguration {
         this.poolSize = poolSize;
     }
 
+    public boolean isCompactPayload() {
+        return compactPayload;
+    }
+
+    public void setCompactPayload(boolean compactPayload) {
+        this.compactPayload = compactPayload;
+    }
+
+    public DataFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public void setPayloadFormat(DataFormat payloadFormat) {
+        this.payloadFormat = payloadFormat;
+    }
+
+    public ConsumerConfiguration getConsumer() {
+        return consumer;
+    }
+
+    public void setConsumer(ConsumerConfiguration consumer) {
+        this.consumer = consumer;
+    }
+
+    public EventsConfiguration getEvents() {
+        return events;
+    }
+
+    public void setEvents(EventsConfiguration events) {
+        this.events = events;
+    }
+
 }
@@ -30,6 +30,9 @@ public class RaptorConfiguration {
     private DispatcherConfiguration dispatcher = new DispatcherConfiguration();
     private AuthConfiguration auth = new AuthConfiguration();
     private BrokerConfiguration broker = new BrokerConfiguration();
+    private StreamConfiguration stream = new StreamConfiguration();
+    private CacheConfiguration cache = new CacheConfiguration();
+    private TreeConfiguration tree = new TreeConfiguration();
     
     public String getUrl() {
         return url;
@@ -63,6 +66,30 @@ public class RaptorConfiguration {
         this.broker = broker;
     }
 
+    public StreamConfiguration getStream() {
+        return stream;
+    }
+
+    public void setStream(StreamConfiguration stream) {
+        this.stream = stream;
+    }
+
+    public CacheConfiguration getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheConfiguration cache) {
+        this.cache = cache;
+    }
+
+    public TreeConfiguration getTree() {
+        return tree;
+    }
+
+    public void setTree(TreeConfiguration tree) {
+        this.tree = tree;
+    }
+
     public Boolean getWeb() {
         return web;
     }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.configuration;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StreamConfiguration {
+
+    private WriterConfiguration writer = new WriterConfiguration();
+
+    // drop the single field indexes replaced by the compound stream index
+    private boolean dropLegacyIndexes = true;
+
+    private IngestConfiguration ingest = new IngestConfiguration();
+
+    /**
+     * Inbound MQTT ingestion of stream data
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class IngestConfiguration {
+
+        // subscribe to the ingest/{deviceId}/{streamId} topics
+        private boolean enabled = false;
+
+        // shared subscription group, instances of the same group split the
+        // load. Leave empty if the broker does not support $share
+        private String sharedGroup = "raptor-stream";
+
+        private int qos = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getSharedGroup() {
+            return sharedGroup;
+        }
+
+        public void setSharedGroup(String sharedGroup) {
+            this.sharedGroup = sharedGroup;
+        }
+
+        public int getQos() {
+            return qos;
+        }
+
+        public void setQos(int qos) {
+            this.qos = qos;
+        }
+
+    }
+
+    /**
+     * Write-behind settings for stream data
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class WriterConfiguration {
+
+        // store records synchronously by default
+        private boolean async = false;
+
+        // max amount of records waiting to be stored
+        private int queueLength = 10000;
+
+        // amount of writer threads
+        private int poolSize = 2;
+
+        // max records per bulk insert
+        private int batchSize = 500;
+
+        // max time in milliseconds a record waits for a bulk insert
+        private int flushInterval = 100;
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public void setQueueLength(int queueLength) {
+            this.queueLength = queueLength;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(int flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+    }
+
+    public WriterConfiguration getWriter() {
+        return writer;
+    }
+
+    public void setWriter(WriterConfiguration writer) {
+        this.writer = writer;
+    }
+
+    public IngestConfiguration getIngest() {
+        return ingest;
+    }
+
+    public void setIngest(IngestConfiguration ingest) {
+        this.ingest = ingest;
+    }
+
+    public boolean isDropLegacyIndexes() {
+        return dropLegacyIndexes;
+    }
+
+    public void setDropLegacyIndexes(boolean dropLegacyIndexes) {
+        this.dropLegacyIndexes = dropLegacyIndexes;
+    }
+
+}
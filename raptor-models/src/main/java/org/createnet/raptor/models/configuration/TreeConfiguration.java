@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.configuration;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TreeConfiguration {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class IndexConfiguration {
+
+        // resolve the parents of the nodes from memory
+        private boolean enabled = true;
+
+        // seconds between full reloads, 0 to disable. Changes of other
+        // instances are broadcast, the reload recovers the lost ones
+        private int refresh = 300;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getRefresh() {
+            return refresh;
+        }
+
+        public void setRefresh(int refresh) {
+            this.refresh = refresh;
+        }
+
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PropagationConfiguration {
+
+        public enum Mode {
+            // forward only the last record of the window
+            latest,
+            // forward all the records of the window in a single event
+            batch
+        }
+
+        // milliseconds stream events are merged for before being propagated
+        // to a node, 0 to propagate immediately
+        private long window = 0;
+
+        // window by distance from the device, starting from the direct
+        // parent. Levels not listed use `window`
+        private List<Long> levels = new ArrayList();
+
+        private Mode mode = Mode.latest;
+
+        // max records per batch, a full batch is propagated immediately
+        private int maxBatch = 100;
+
+        /**
+         * Return the window of the ancestor at a distance from the device
+         *
+         * @param level 1 for the direct parent
+         * @return
+         */
+        public long getWindow(int level) {
+            if (level > 0 && level <= levels.size() && levels.get(level - 1) != null) {
+                return levels.get(level - 1);
+            }
+            return window;
+        }
+
+        public long getWindow() {
+            return window;
+        }
+
+        public void setWindow(long window) {
+            this.window = window;
+        }
+
+        public List<Long> getLevels() {
+            return levels;
+        }
+
+        public void setLevels(List<Long> levels) {
+            this.levels = levels;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+    }
+
+    // fill the ancestors of the nodes stored by previous versions on startup
+    private boolean migrateAncestors = true;
+
+    private IndexConfiguration index = new IndexConfiguration();
+
+    private PropagationConfiguration propagation = new PropagationConfiguration();
+
+    public boolean isMigrateAncestors() {
+        return migrateAncestors;
+    }
+
+    public void setMigrateAncestors(boolean migrateAncestors) {
+        this.migrateAncestors = migrateAncestors;
+    }
+
+    public IndexConfiguration getIndex() {
+        return index;
+    }
+
+    public void setIndex(IndexConfiguration index) {
+        this.index = index;
+    }
+
+    public PropagationConfiguration getPropagation() {
+        return propagation;
+    }
+
+    public void setPropagation(PropagationConfiguration propagation) {
+        this.propagation = propagation;
+    }
+
+}
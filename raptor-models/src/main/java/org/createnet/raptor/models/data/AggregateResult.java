@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.data;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of an aggregation as compact series, one per device if grouped by
+ * device. Values are stored by column: the nth value of each operator refers
+ * to the nth bucket timestamp.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AggregateResult {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static public class Series {
+
+        protected String deviceId;
+
+        // start of the buckets in epoch milliseconds
+        protected List<Long> timestamps = new ArrayList();
+
+        // channel -> operator -> values
+        protected Map<String, Map<String, List<Object>>> channels = new LinkedHashMap();
+
+        public Series() {
+        }
+
+        public Series(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        /**
+         * Return the values of a channel operator
+         *
+         * @param channel
+         * @param operator
+         * @return
+         */
+        public List<Object> values(String channel, String operator) {
+            return channels
+                    .computeIfAbsent(channel, (c) -> new LinkedHashMap<>())
+                    .computeIfAbsent(operator, (o) -> new ArrayList<>());
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public void setDeviceId(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        public List<Long> getTimestamps() {
+            return timestamps;
+        }
+
+        public void setTimestamps(List<Long> timestamps) {
+            this.timestamps = timestamps;
+        }
+
+        public Map<String, Map<String, List<Object>>> getChannels() {
+            return channels;
+        }
+
+        public void setChannels(Map<String, Map<String, List<Object>>> channels) {
+            this.channels = channels;
+        }
+
+    }
+
+    protected String streamId;
+    protected long interval;
+    protected List<Series> series = new ArrayList();
+
+    // true if buckets past AggregateQuery.MAX_BUCKETS were left out
+    protected boolean truncated = false;
+
+    public AggregateResult() {
+    }
+
+    public AggregateResult(String streamId, long interval) {
+        this.streamId = streamId;
+        this.interval = interval;
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(String streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public List<Series> getSeries() {
+        return series;
+    }
+
+    public void setSeries(List<Series> series) {
+        this.series = series;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+}
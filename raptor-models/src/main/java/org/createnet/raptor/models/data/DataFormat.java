@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.createnet.raptor.models.objects.RaptorContainer;
+
+/**
+ * Wire formats of records and payloads. Binary formats share the JSON data
+ * model, so the same (de)serializers apply.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public enum DataFormat {
+
+    json("application/json"),
+    cbor("application/cbor"),
+    smile("application/x-jackson-smile");
+
+    final private String mediaType;
+    private ObjectMapper mapper;
+
+    private DataFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Return the mapper of the format, JSON uses the shared model mapper
+     *
+     * @return
+     */
+    public ObjectMapper getMapper() {
+        if (mapper == null) {
+            switch (this) {
+                case cbor:
+                    mapper = new ObjectMapper(new CBORFactory());
+                    break;
+                case smile:
+                    mapper = new ObjectMapper(new SmileFactory());
+                    break;
+                default:
+                    mapper = RaptorContainer.getMapper();
+            }
+        }
+        return mapper;
+    }
+
+    public boolean isBinary() {
+        return this != json;
+    }
+
+    /**
+     * Return the format of a media type
+     *
+     * @param mediaType
+     * @return the format or null if not supported
+     */
+    public static DataFormat fromMediaType(String mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        for (DataFormat format : values()) {
+            if (mediaType.contains(format.getMediaType())) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Detect the format of an encoded document. JSON documents start with an
+     * object, array or whitespace, Smile documents with the `:)\n` header,
+     * anything else is handled as CBOR
+     *
+     * @param raw
+     * @return
+     */
+    public static DataFormat detect(byte[] raw) {
+        if (raw == null || raw.length == 0) {
+            return json;
+        }
+        switch (raw[0]) {
+            case '{':
+            case '[':
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                return json;
+            case ':':
+                if (raw.length > 2 && raw[1] == ')' && raw[2] == '\n') {
+                    return smile;
+                }
+        }
+        return cbor;
+    }
+
+}
@@ -43,7 +43,8 @@ import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
@@ -54,27 +55,39 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @JsonDeserialize(using = RecordSetDeserializer.class)
 @JsonIgnoreProperties(ignoreUnknown = true)
 @Document
+@CompoundIndexes({
+    // list, lastUpdate, search and keyset pagination all filter by device and
+    // stream and sort or range on timestamp
+    @CompoundIndex(name = RecordSet.STREAM_INDEX, def = "{'deviceId': 1, 'streamId': 1, 'timestamp': -1, '_id': -1}"),
+    // aggregations of a stream across the devices of an user
+    @CompoundIndex(name = RecordSet.USER_STREAM_INDEX, def = "{'userId': 1, 'streamId': 1, 'timestamp': -1}")
+})
 public class RecordSet {
 
+    /**
+     * Name of the compound index covering the stream queries
+     */
+    public static final String STREAM_INDEX = "deviceId_streamId_timestamp";
+
+    /**
+     * Name of the compound index covering the stream queries across devices
+     */
+    public static final String USER_STREAM_INDEX = "userId_streamId_timestamp";
+
     @Id
     protected String id;
 
-    @Indexed
     protected Date timestamp;
 
-    @Indexed
     @JsonProperty
     final protected Map<String, Object> channels = new HashMap();
 
-    @Indexed
     @JsonProperty
     protected String userId;
 
-    @Indexed
     @JsonProperty
     protected String streamId;
 
-    @Indexed
     @JsonProperty
     protected String deviceId;
 
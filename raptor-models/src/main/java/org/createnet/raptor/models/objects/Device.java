@@ -76,6 +76,9 @@ public class Device extends DeviceContainer implements Owneable, AclDomain {
 
     @Indexed
     private Long updatedAt = createdAt;
+
+    // increased on every store, orders the definitions of the same device
+    private Long version = 0L;
     
     private String domain;
         
@@ -199,6 +202,14 @@ public class Device extends DeviceContainer implements Owneable, AclDomain {
         updatedAt = Instant.now().getEpochSecond();
     }
 
+    /**
+     * Increase the version, using the current time in milliseconds if ahead
+     * of the previous version
+     */
+    public void nextVersion() {
+        version = Math.max(getVersion() + 1, System.currentTimeMillis());
+    }
+
     @Override
     public void validate() {
 
@@ -250,6 +261,7 @@ public class Device extends DeviceContainer implements Owneable, AclDomain {
 
         createdAt = device.getCreatedAt();
         updatedAt = device.getUpdatedAt();
+        version = device.getVersion();
 
         settings.eventsEnabled = device.settings().eventsEnabled;
         settings.storeData = device.settings().storeData;
@@ -381,6 +393,11 @@ public class Device extends DeviceContainer implements Owneable, AclDomain {
         return updatedAt;
     }
 
+    @JsonProperty
+    public long getVersion() {
+        return version == null ? 0 : version;
+    }
+
     @JsonProperty
     public String id() {
         return id;
@@ -471,6 +488,11 @@ public class Device extends DeviceContainer implements Owneable, AclDomain {
         return this;
     }
 
+    public Device version(Long version) {
+        this.version = version;
+        return this;
+    }
+
     public Device updatedAt(Long updatedAt) {
         this.updatedAt = updatedAt;
         return this;
@@ -67,6 +67,10 @@ public class DeviceDeserializer extends JsonDeserializer<Device> {
             device.domain(getText("domain", tree));
         }
 
+        if (tree.has("version") && tree.get("version").canConvertToLong()) {
+            device.version(tree.get("version").asLong());
+        }
+
         if (tree.has("properties") && tree.get("properties").size() > 0) {
             device.properties().putAll(Device.getMapper().convertValue(tree.get("properties"), new TypeReference<Map<String, Object>>() {}));
         }
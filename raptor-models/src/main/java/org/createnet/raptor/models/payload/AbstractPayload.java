@@ -15,15 +15,24 @@
  */
 package org.createnet.raptor.models.payload;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.objects.RaptorComponent;
+import org.createnet.raptor.models.objects.RaptorContainer;
 
 /**
  *
  * @author Luca Capra <luca.capra@fbk.eu>
  */
 public class AbstractPayload implements DispatcherPayload {
-    
+
+    /**
+     * Shared writer, thread safe and configured once
+     */
+    final protected static ObjectWriter writer = RaptorContainer.getMapper().writer();
+
     public EntityType type;
     public Operation op;
     
@@ -36,5 +45,14 @@ public class AbstractPayload implements DispatcherPayload {
     public Operation getOp() {
         return op;
     }
-    
+
+    @Override
+    public byte[] toBytes() {
+        try {
+            return writer.writeValueAsBytes(this);
+        } catch (JsonProcessingException ex) {
+            throw new RaptorComponent.ParserException(ex);
+        }
+    }
+
 }
@@ -38,4 +38,20 @@ public class ActionPayload extends DevicePayload {
         this.type = EntityType.action;
     }
 
+    /**
+     * Return a copy of the payload without the device definition
+     *
+     * @return
+     */
+    public ActionPayload compact() {
+        ActionPayload payload = new ActionPayload();
+        payload.type = type;
+        payload.op = op;
+        payload.userId = userId;
+        payload.deviceId = getDeviceId();
+        payload.actionId = actionId;
+        payload.data = data;
+        return payload;
+    }
+
 }
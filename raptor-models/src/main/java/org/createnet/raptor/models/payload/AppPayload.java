@@ -37,4 +37,12 @@ public class AppPayload extends AbstractPayload {
         this.type = EntityType.app;
     }
 
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(String appId) {
+        this.appId = appId;
+    }
+
 }
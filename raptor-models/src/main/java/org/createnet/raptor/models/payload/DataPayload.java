@@ -15,7 +15,12 @@
  */
 package org.createnet.raptor.models.payload;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.exception.PayloadParserException;
+import org.createnet.raptor.models.objects.RaptorContainer;
 
 /**
  *
@@ -37,4 +42,21 @@ public class DataPayload extends AbstractPayload {
     public String toString() {
         return c;
     }
+
+    @Override
+    public byte[] toBytes() {
+        return c.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] toBytes(DataFormat format) {
+        if (format == null || format == DataFormat.json) {
+            return toBytes();
+        }
+        try {
+            return format.getMapper().writeValueAsBytes(RaptorContainer.getMapper().readTree(c));
+        } catch (IOException ex) {
+            throw new PayloadParserException(ex);
+        }
+    }
 }
@@ -28,6 +28,7 @@ import org.createnet.raptor.models.objects.Device;
 public class DevicePayload extends AbstractPayload {
 
     public String userId;
+    public String deviceId;
     public Device device;
 
     public DevicePayload() {
@@ -35,6 +36,7 @@ public class DevicePayload extends AbstractPayload {
 
     public DevicePayload(Device obj, Operation op) {
         userId = obj.userId();
+        deviceId = obj.id();
         device = obj;
         type = EntityType.device;
         this.op = op;
@@ -43,7 +45,7 @@ public class DevicePayload extends AbstractPayload {
     @Override
     public String toString() {
         try {
-            return Device.getMapper().writeValueAsString(this);
+            return writer.writeValueAsString(this);
         } catch (JsonProcessingException ex) {
             throw new RaptorComponent.ParserException(ex);
         }
@@ -57,6 +59,23 @@ public class DevicePayload extends AbstractPayload {
         this.userId = userId;
     }
 
+    /**
+     * Return the device id, also available in compact payloads without the
+     * device definition
+     *
+     * @return
+     */
+    public String getDeviceId() {
+        if (deviceId == null && device != null) {
+            return device.id();
+        }
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
     public Device getDevice() {
         return device;
     }
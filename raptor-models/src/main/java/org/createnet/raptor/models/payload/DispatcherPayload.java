@@ -16,10 +16,12 @@
 package org.createnet.raptor.models.payload;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.data.DataFormat;
 import org.createnet.raptor.models.exception.PayloadParserException;
 import org.createnet.raptor.models.objects.RaptorContainer;
 
@@ -46,14 +48,60 @@ public interface DispatcherPayload {
     
     @Override
     public String toString();
-    
-    public static DispatcherPayload parseJSON(String json) {
+
+    /**
+     * Return the JSON encoded payload
+     *
+     * @return
+     */
+    default public byte[] toBytes() {
+        return toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the payload encoded in the given format
+     *
+     * @param format
+     * @return
+     */
+    default public byte[] toBytes(DataFormat format) {
+        if (format == null || format == DataFormat.json) {
+            return toBytes();
+        }
         try {
-            return DispatcherPayload.parseJSON(RaptorContainer.getMapper().readValue(json, JsonNode.class));
-        } catch (IOException ex) {
+            return format.getMapper().writeValueAsBytes(this);
+        } catch (JsonProcessingException ex) {
             throw new PayloadParserException(ex);
         }
     }
+
+    /**
+     * Parse an encoded payload, detecting its format. The payload is bound
+     * directly to the class matching its `type`
+     *
+     * @param raw
+     * @return
+     */
+    public static DispatcherPayload parse(byte[] raw) {
+        return PayloadReader.read(raw);
+    }
+
+    /**
+     * Parse a message payload, either raw bytes or a JSON string
+     *
+     * @param payload
+     * @return
+     */
+    public static DispatcherPayload parse(Object payload) {
+        if (payload instanceof byte[]) {
+            return parse((byte[]) payload);
+        }
+        return parseJSON(payload.toString());
+    }
+    
+    public static DispatcherPayload parseJSON(String json) {
+        return PayloadReader.read(json);
+    }
     
     /**
      * Parse a json node an return the correct DispatcherPayload implementation
@@ -87,6 +135,8 @@ public interface DispatcherPayload {
                     return RaptorContainer.getMapper().treeToValue(json, UserPayload.class);
                 case token:
                     return RaptorContainer.getMapper().treeToValue(json, TokenPayload.class);
+                case app:
+                    return RaptorContainer.getMapper().treeToValue(json, AppPayload.class);
                 default:
                     throw new Exception("Field `type` does not match a known payload: " + type);
             }
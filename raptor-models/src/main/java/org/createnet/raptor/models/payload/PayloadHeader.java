@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.payload;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.exception.PayloadParserException;
+
+/**
+ * The `type` and `op` of an encoded payload, read without binding the rest
+ * of the document
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class PayloadHeader {
+
+    final private EntityType type;
+    final private Operation op;
+
+    public PayloadHeader(EntityType type, Operation op) {
+        this.type = type;
+        this.op = op;
+    }
+
+    public EntityType getType() {
+        return type;
+    }
+
+    public Operation getOp() {
+        return op;
+    }
+
+    /**
+     * Scan the top level fields of an encoded payload for `type` and `op`,
+     * skipping nested objects
+     *
+     * @param raw
+     * @return
+     */
+    public static PayloadHeader read(byte[] raw) {
+
+        EntityType type = null;
+        Operation op = null;
+
+        try (JsonParser parser = DataFormat.detect(raw).getMapper().getFactory().createParser(raw)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new PayloadParserException("Payload is not an object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME && (type == null || op == null)) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                    type = EntityType.valueOf(parser.getText());
+                } else if ("op".equals(field) && value == JsonToken.VALUE_STRING) {
+                    op = Operation.valueOf(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new PayloadParserException(ex);
+        }
+
+        if (type == null) {
+            throw new PayloadParserException("Field `type` is missing");
+        }
+
+        return new PayloadHeader(type, op);
+    }
+
+}
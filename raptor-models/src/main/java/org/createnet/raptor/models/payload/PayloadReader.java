@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.payload;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.exception.PayloadParserException;
+
+/**
+ * Bind encoded payloads in a single streaming pass to the class matching
+ * their `type`, without building an intermediate tree.
+ *
+ * The type mapping is applied as a mix-in on a copy of the format mappers,
+ * so the serialization of the payloads is not affected.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+final public class PayloadReader {
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type", visible = true)
+    @JsonSubTypes({
+        @JsonSubTypes.Type(value = ActionPayload.class, name = "action"),
+        @JsonSubTypes.Type(value = DataPayload.class, name = "data"),
+        @JsonSubTypes.Type(value = DevicePayload.class, name = "device"),
+        @JsonSubTypes.Type(value = StreamPayload.class, name = "stream"),
+        @JsonSubTypes.Type(value = UserPayload.class, name = "user"),
+        @JsonSubTypes.Type(value = TokenPayload.class, name = "token"),
+        @JsonSubTypes.Type(value = AppPayload.class, name = "app")
+    })
+    private interface TypedPayload {
+    }
+
+    // built once, read without locking on every message
+    final private static Map<DataFormat, ObjectReader> readers;
+
+    static {
+        Map<DataFormat, ObjectReader> map = new EnumMap(DataFormat.class);
+        for (DataFormat format : DataFormat.values()) {
+            map.put(format, format.getMapper().copy()
+                    .addMixIn(DispatcherPayload.class, TypedPayload.class)
+                    .readerFor(DispatcherPayload.class));
+        }
+        readers = Collections.unmodifiableMap(map);
+    }
+
+    private PayloadReader() {
+    }
+
+    protected static ObjectReader getReader(DataFormat format) {
+        return readers.get(format);
+    }
+
+    /**
+     * Parse an encoded payload, detecting its format
+     *
+     * @param raw
+     * @return
+     */
+    public static DispatcherPayload read(byte[] raw) {
+        try {
+            return getReader(DataFormat.detect(raw)).readValue(raw);
+        } catch (IOException ex) {
+            throw new PayloadParserException(ex);
+        }
+    }
+
+    /**
+     * Parse a JSON payload
+     *
+     * @param json
+     * @return
+     */
+    public static DispatcherPayload read(String json) {
+        try {
+            return getReader(DataFormat.json).readValue(json);
+        } catch (IOException ex) {
+            throw new PayloadParserException(ex);
+        }
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.createnet.raptor.models.payload;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
 import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.data.RecordSet;
@@ -29,6 +31,12 @@ public class StreamPayload extends DevicePayload {
     public String streamId;
     public RecordSet record;
 
+    /**
+     * Records coalesced in a single event, the last one is also set as record
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<RecordSet> records;
+
     public StreamPayload() {
     }
     
@@ -39,4 +47,35 @@ public class StreamPayload extends DevicePayload {
         this.type = EntityType.stream;
     }
 
+    /**
+     * Return a copy of the payload without the device definition
+     *
+     * @return
+     */
+    public StreamPayload compact() {
+        StreamPayload payload = new StreamPayload();
+        payload.type = type;
+        payload.op = op;
+        payload.userId = userId;
+        payload.deviceId = getDeviceId();
+        payload.streamId = streamId;
+        payload.record = record;
+        payload.records = records;
+        return payload;
+    }
+
+    /**
+     * Return a copy of the payload carrying a batch of records
+     *
+     * @param records
+     * @return
+     */
+    public StreamPayload batch(List<RecordSet> records) {
+        StreamPayload payload = compact();
+        payload.device = device;
+        payload.records = records;
+        payload.record = records.isEmpty() ? record : records.get(records.size() - 1);
+        return payload;
+    }
+
 }
@@ -19,7 +19,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.auth.Token;
-import org.createnet.raptor.models.objects.Device;
 import org.createnet.raptor.models.objects.RaptorComponent;
 
 /**
@@ -42,7 +41,7 @@ public class TokenPayload extends AbstractPayload {
     @Override
     public String toString() {
         try {
-            return Device.getMapper().writeValueAsString(this);
+            return writer.writeValueAsString(this);
         } catch (JsonProcessingException ex) {
             throw new RaptorComponent.ParserException(ex);
         }
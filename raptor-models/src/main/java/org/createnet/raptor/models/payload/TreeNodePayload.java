@@ -18,7 +18,6 @@ package org.createnet.raptor.models.payload;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.createnet.raptor.models.acl.EntityType;
 import org.createnet.raptor.models.objects.RaptorComponent;
-import org.createnet.raptor.models.objects.Device;
 import org.createnet.raptor.models.tree.TreeNode;
 
 /**
@@ -44,7 +43,7 @@ public class TreeNodePayload extends AbstractPayload {
     @Override
     public String toString() {
         try {
-            return Device.getMapper().writeValueAsString(this);
+            return writer.writeValueAsString(this);
         } catch (JsonProcessingException ex) {
             throw new RaptorComponent.ParserException(ex);
         }
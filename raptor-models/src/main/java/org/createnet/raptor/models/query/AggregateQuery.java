@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.query;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.createnet.raptor.models.objects.Channel;
+import org.createnet.raptor.models.objects.RaptorComponent;
+import org.createnet.raptor.models.objects.Stream;
+
+/**
+ * Aggregation of the channels of the records matching a data query, grouped
+ * by time buckets and optionally by device.
+ *
+ * Operators are set per channel by name: count, min, max, avg, sum, first,
+ * last, or pNN for the NNth percentile (eg. p95)
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class AggregateQuery implements IQuery {
+
+    // max amount of buckets returned by an aggregation
+    final public static int MAX_BUCKETS = 10000;
+
+    // max amount of records aggregated with percentiles, as their values are
+    // collected in the buckets
+    final public static int MAX_PERCENTILE_VALUES = 100000;
+
+    public enum Operator {
+        count, min, max, avg, sum, first, last
+    }
+
+    // size of the time buckets in milliseconds, 0 for a single bucket
+    protected long interval = 0;
+
+    // group the buckets by device
+    protected boolean byDevice = false;
+
+    protected Map<String, List<String>> channels = new LinkedHashMap();
+
+    public AggregateQuery interval(long interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    public AggregateQuery interval(Duration interval) {
+        return interval(interval.toMillis());
+    }
+
+    public AggregateQuery byDevice(boolean byDevice) {
+        this.byDevice = byDevice;
+        return this;
+    }
+
+    /**
+     * Set the operators of a channel
+     *
+     * @param channelName
+     * @param operators
+     * @return
+     */
+    public AggregateQuery channel(String channelName, String... operators) {
+        channels.put(channelName, Arrays.asList(operators));
+        return this;
+    }
+
+    /**
+     * Return the percentile of a pNN operator
+     *
+     * @param operator
+     * @return the percentile, or null if the operator is not a percentile
+     */
+    public static Double percentile(String operator) {
+        if (operator == null || operator.length() < 2 || operator.charAt(0) != 'p') {
+            return null;
+        }
+        try {
+            return Double.parseDouble(operator.substring(1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if any channel has a percentile operator
+     *
+     * @return
+     */
+    public boolean hasPercentiles() {
+        return channels.values().stream().anyMatch((ops) -> ops.stream().anyMatch((op) -> percentile(op) != null));
+    }
+
+    /**
+     * Return true if the operator is supported
+     *
+     * @param operator
+     * @return
+     */
+    public static boolean isValid(String operator) {
+        Double p = percentile(operator);
+        if (p != null) {
+            return p > 0 && p <= 100;
+        }
+        return Arrays.stream(Operator.values()).anyMatch((o) -> o.name().equals(operator));
+    }
+
+    /**
+     * Return true if the operator needs numeric values
+     *
+     * @param operator
+     * @return
+     */
+    public static boolean isNumeric(String operator) {
+        return !(Operator.count.name().equals(operator)
+                || Operator.first.name().equals(operator)
+                || Operator.last.name().equals(operator));
+    }
+
+    public void validate() throws RaptorComponent.ValidationException {
+
+        if (interval < 0) {
+            throw new RaptorComponent.ValidationException("interval cannot be negative");
+        }
+        if (channels.isEmpty()) {
+            throw new RaptorComponent.ValidationException("At least one channel is required");
+        }
+
+        for (Map.Entry<String, List<String>> en : channels.entrySet()) {
+            if (en.getValue() == null || en.getValue().isEmpty()) {
+                throw new RaptorComponent.ValidationException("No operators for channel " + en.getKey());
+            }
+            for (String operator : en.getValue()) {
+                if (!isValid(operator)) {
+                    throw new RaptorComponent.ValidationException("Operator not supported: " + operator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validate the operators against the channels of a stream
+     *
+     * @param stream
+     * @throws RaptorComponent.ValidationException
+     */
+    public void validate(Stream stream) throws RaptorComponent.ValidationException {
+
+        validate();
+
+        for (Map.Entry<String, List<String>> en : channels.entrySet()) {
+            Channel channel = stream.getChannels().get(en.getKey());
+            if (channel == null) {
+                throw new RaptorComponent.ValidationException("Channel not found: " + en.getKey());
+            }
+            for (String operator : en.getValue()) {
+                if (isNumeric(operator) && !"number".equalsIgnoreCase(channel.getType())) {
+                    throw new RaptorComponent.ValidationException("Operator " + operator + " requires a number channel: " + en.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the amount of buckets covering a time range
+     *
+     * @param from epoch milliseconds
+     * @param to epoch milliseconds
+     * @return
+     */
+    public long buckets(long from, long to) {
+        if (interval == 0) {
+            return 1;
+        }
+        return (to / interval) - (from / interval) + 1;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public boolean isByDevice() {
+        return byDevice;
+    }
+
+    public void setByDevice(boolean byDevice) {
+        this.byDevice = byDevice;
+    }
+
+    public Map<String, List<String>> getChannels() {
+        return channels;
+    }
+
+    public void setChannels(Map<String, List<String>> channels) {
+        this.channels = channels;
+    }
+
+    @JsonIgnore
+    @Override
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+}
@@ -15,8 +15,10 @@
  */
 package org.createnet.raptor.models.query;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import org.createnet.raptor.models.query.deserializer.DataQueryDeserializer;
@@ -37,6 +39,10 @@ public class DataQuery extends BaseQuery {
     protected final Map<String, IQuery> channels = new HashMap();
     protected final GeoQuery location = new GeoQuery();
     protected String streamId = null;
+    protected AggregateQuery aggregate = null;
+
+    // set by the API to restrict the query to the devices of the caller
+    protected Collection<String> deviceIds = null;
 
     public DataQuery timeRange(Instant from, Instant to) {
         timestamp.between(from.toEpochMilli(), to.toEpochMilli());
@@ -81,6 +87,23 @@ public class DataQuery extends BaseQuery {
         return this;
     }
 
+    public DataQuery deviceIds(Collection<String> ids) {
+        this.deviceIds = ids;
+        return this;
+    }
+
+    /**
+     * Aggregate the matching records instead of listing them
+     *
+     * @return
+     */
+    public AggregateQuery aggregate() {
+        if (aggregate == null) {
+            aggregate = new AggregateQuery();
+        }
+        return aggregate;
+    }
+
     public NumberQuery getTimestamp() {
         return timestamp;
     }
@@ -97,4 +120,17 @@ public class DataQuery extends BaseQuery {
         return streamId;
     }
 
+    @JsonIgnore
+    public Collection<String> getDeviceIds() {
+        return deviceIds;
+    }
+
+    public AggregateQuery getAggregate() {
+        return aggregate;
+    }
+
+    public void setAggregate(AggregateQuery aggregate) {
+        this.aggregate = aggregate;
+    }
+
 }
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.createnet.raptor.models.query.AggregateQuery;
 import org.createnet.raptor.models.query.BoolQuery;
 import org.createnet.raptor.models.query.DataQuery;
 import org.createnet.raptor.models.query.IQuery;
@@ -170,6 +171,9 @@ public class DataQueryDeserializer extends AbstractQueryDeserializer<DataQuery>
                 }
             }
         }
+        if (node.has("aggregate") && !node.get("aggregate").isNull()) {
+            query.setAggregate(jp.getCodec().treeToValue(node.get("aggregate"), AggregateQuery.class));
+        }
 
         return query;
     }
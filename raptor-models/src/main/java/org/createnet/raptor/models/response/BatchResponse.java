@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch operation, reporting the errors for each rejected item by
+ * its position in the request
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BatchResponse {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ItemError {
+
+        private int index;
+        private String message;
+
+        public ItemError() {
+        }
+
+        public ItemError(int index, String message) {
+            this.index = index;
+            this.message = message;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+    }
+
+    private int total = 0;
+    private List<ItemError> errors = new ArrayList();
+
+    public BatchResponse() {
+    }
+
+    public BatchResponse(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Track an error for the item at the provided position
+     *
+     * @param index
+     * @param message
+     * @return
+     */
+    public BatchResponse error(int index, String message) {
+        errors.add(new ItemError(index, message));
+        return this;
+    }
+
+    /**
+     * Merge the result of a partial batch, shifting the error positions by
+     * offset
+     *
+     * @param partial
+     * @param offset
+     * @return
+     */
+    public BatchResponse merge(BatchResponse partial, int offset) {
+        partial.getErrors().forEach((e) -> error(e.getIndex() + offset, e.getMessage()));
+        return this;
+    }
+
+    @JsonIgnore
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getAccepted() {
+        return total - errors.size();
+    }
+
+    public List<ItemError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<ItemError> errors) {
+        this.errors = errors;
+    }
+
+}
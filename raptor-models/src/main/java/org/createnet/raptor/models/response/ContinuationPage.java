@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of results retrieved by keyset pagination. The continuation token
+ * selects the next page and is null on the last one.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ * @param <T>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ContinuationPage<T> {
+
+    private List<T> content = new ArrayList();
+    private String continuation;
+    private int size;
+
+    public ContinuationPage() {
+    }
+
+    public ContinuationPage(List<T> content, int size, String continuation) {
+        this.content = content;
+        this.size = size;
+        this.continuation = continuation;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    /**
+     * The token to request the next page, null if this is the last page
+     *
+     * @return
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    /**
+     * The requested page size
+     *
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getNumberOfElements() {
+        return content.size();
+    }
+
+    public boolean isLast() {
+        return continuation == null;
+    }
+
+}
@@ -20,8 +20,6 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -103,6 +101,13 @@ public class TreeNode extends RaptorContainer implements Owneable, AclDomain {
     @Indexed
     protected long order = 0;
 
+    /**
+     * Ids of the nodes from the root to the direct parent, maintained by the
+     * tree service
+     */
+    @Indexed
+    protected List<String> ancestors = new ArrayList<>();
+
     protected Map<String, Object> properties = new HashMap();
 
     @Transient
@@ -223,6 +228,25 @@ public class TreeNode extends RaptorContainer implements Owneable, AclDomain {
         return this;
     }
 
+    public List<String> getAncestors() {
+        return ancestors;
+    }
+
+    public TreeNode ancestors(List<String> ancestors) {
+        this.ancestors = ancestors == null ? new ArrayList<>() : ancestors;
+        return this;
+    }
+
+    /**
+     * Return the id of the root of the tree this node belongs to
+     *
+     * @return
+     */
+    @JsonIgnore
+    public String getRootId() {
+        return ancestors.isEmpty() ? getId() : ancestors.get(0);
+    }
+
     public Map<String, Object> properties() {
         return properties;
     }
@@ -265,24 +289,14 @@ public class TreeNode extends RaptorContainer implements Owneable, AclDomain {
     
     /**
      * Build a string with the path from root to the current node
-     * Ensure the tree is fully loaded to avoid incomplete paths.
      * 
      * @return 
      */
     public String path() {
         
-        ArrayList<String> path = new ArrayList(Arrays.asList(this.getId()));
-        
-        TreeNode p = this.getParent();
-        if(p != null) {
-            while(p != null) {
-                String pid = p.getId();
-                path.add(pid);
-                p = p.getParent();
-            }
-        }
+        ArrayList<String> path = new ArrayList(ancestors);
+        path.add(this.getId());
         
-        Collections.reverse(path);
         return String.join(separator, path);
     }
 }
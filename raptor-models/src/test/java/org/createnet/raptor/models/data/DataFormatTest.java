@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.data;
+
+import java.io.IOException;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.StreamPayload;
+import org.createnet.raptor.utils.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class DataFormatTest extends TestUtils {
+
+    private Stream stream;
+    private RecordSet record;
+
+    @Before
+    public void setUp() {
+        loadObject();
+        device = Device.fromJSON(jsonDevice);
+        device.id("device-1");
+        stream = device.stream(defaultStreamName);
+        record = new RecordSet(stream).channel("ratio", 11.45).channel("happy", true);
+    }
+
+    @Test
+    public void testRecordRoundTrip() throws IOException {
+        for (DataFormat format : DataFormat.values()) {
+
+            byte[] encoded = format.getMapper().writeValueAsBytes(record);
+            assertEquals(format, DataFormat.detect(encoded));
+
+            RecordSet parsed = format.getMapper().readValue(encoded, RecordSet.class);
+            assertEquals(11.45, (Double) parsed.channels().get("ratio"), 0);
+            assertEquals(true, parsed.channels().get("happy"));
+            assertEquals("device-1", parsed.deviceId());
+        }
+    }
+
+    @Test
+    public void testBinarySmaller() throws IOException {
+        int json = DataFormat.json.getMapper().writeValueAsBytes(record).length;
+        assertTrue(DataFormat.cbor.getMapper().writeValueAsBytes(record).length < json);
+        assertTrue(DataFormat.smile.getMapper().writeValueAsBytes(record).length < json);
+    }
+
+    @Test
+    public void testPayload() {
+        StreamPayload payload = new StreamPayload(stream, Operation.push, record);
+        for (DataFormat format : DataFormat.values()) {
+            DispatcherPayload parsed = DispatcherPayload.parse(payload.toBytes(format));
+            assertTrue(parsed instanceof StreamPayload);
+            assertEquals("device-1", ((StreamPayload) parsed).getDeviceId());
+        }
+    }
+
+    @Test
+    public void testFromMediaType() {
+        assertEquals(DataFormat.cbor, DataFormat.fromMediaType("application/cbor"));
+        assertEquals(DataFormat.json, DataFormat.fromMediaType("application/json;charset=UTF-8"));
+        assertNull(DataFormat.fromMediaType("text/plain"));
+    }
+
+}
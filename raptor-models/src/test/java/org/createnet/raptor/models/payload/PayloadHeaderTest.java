@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.payload;
+
+import java.nio.charset.StandardCharsets;
+import org.createnet.raptor.models.acl.EntityType;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.exception.PayloadParserException;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.utils.TestUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class PayloadHeaderTest extends TestUtils {
+
+    @Test
+    public void testRead() {
+
+        loadObject();
+        device = Device.fromJSON(jsonDevice);
+        device.id("device-1");
+        Stream stream = device.stream(defaultStreamName);
+
+        StreamPayload payload = new StreamPayload(stream, Operation.push, new RecordSet(stream).channel("ratio", 1.5));
+        for (DataFormat format : DataFormat.values()) {
+            PayloadHeader header = PayloadHeader.read(payload.toBytes(format));
+            assertEquals(EntityType.stream, header.getType());
+            assertEquals(Operation.push, header.getOp());
+        }
+    }
+
+    @Test
+    public void testNestedType() {
+        // the nested `type` must not be taken for the payload one
+        PayloadHeader header = PayloadHeader.read("{\"device\":{\"type\":\"stream\"},\"op\":\"update\",\"type\":\"device\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(EntityType.device, header.getType());
+        assertEquals(Operation.update, header.getOp());
+    }
+
+    @Test(expected = PayloadParserException.class)
+    public void testMissingType() {
+        PayloadHeader.read("{\"op\":\"update\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+}
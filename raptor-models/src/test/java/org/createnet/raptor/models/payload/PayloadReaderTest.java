@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.payload;
+
+import java.nio.charset.StandardCharsets;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.exception.PayloadParserException;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.utils.TestUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class PayloadReaderTest extends TestUtils {
+
+    @Test
+    public void testDevicePayload() {
+
+        loadObject();
+        device = Device.fromJSON(jsonDevice);
+        device.id("device-1");
+
+        DevicePayload payload = new DevicePayload(device, Operation.update);
+        DispatcherPayload parsed = PayloadReader.read(payload.toBytes());
+
+        assertTrue(parsed instanceof DevicePayload);
+        assertEquals(Operation.update, parsed.getOp());
+        assertEquals("device-1", ((DevicePayload) parsed).getDevice().id());
+        assertEquals(device.streams().size(), ((DevicePayload) parsed).getDevice().streams().size());
+    }
+
+    @Test
+    public void testTypeNotFirst() {
+        DispatcherPayload parsed = PayloadReader.read("{\"op\":\"delete\",\"user\":{\"id\":\"u1\"},\"type\":\"user\"}");
+        assertTrue(parsed instanceof UserPayload);
+        assertEquals(Operation.delete, parsed.getOp());
+    }
+
+    @Test(expected = PayloadParserException.class)
+    public void testUnknownType() {
+        PayloadReader.read("{\"type\":\"tree\",\"op\":\"update\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.models.payload;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.Arrays;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.utils.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class StreamPayloadTest extends TestUtils {
+
+    private Stream stream;
+    private RecordSet record;
+
+    @Before
+    public void setUp() {
+        loadObject();
+        device = Device.fromJSON(jsonDevice);
+        device.id("device-1");
+        stream = device.stream(defaultStreamName);
+        record = new RecordSet(stream).channel("ratio", 11.45);
+    }
+
+    @Test
+    public void testEncodeOnce() throws IOException {
+
+        StreamPayload payload = new StreamPayload(stream, Operation.push, record);
+
+        byte[] encoded = payload.toBytes();
+        DispatcherPayload parsed = DispatcherPayload.parseJSON(new String(encoded, "UTF-8"));
+
+        assertTrue(parsed instanceof StreamPayload);
+        assertEquals("device-1", ((StreamPayload) parsed).getDeviceId());
+        assertNotNull(((StreamPayload) parsed).getDevice());
+        assertEquals(payload.toString(), new String(encoded, "UTF-8"));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+
+        StreamPayload payload = new StreamPayload(stream, Operation.push, record).compact();
+
+        JsonNode json = mapper.readTree(payload.toBytes());
+        assertTrue(!json.hasNonNull("device"));
+        assertEquals("device-1", json.get("deviceId").asText());
+        assertEquals(defaultStreamName, json.get("streamId").asText());
+        assertTrue(json.get("record").has("channels"));
+
+        StreamPayload parsed = (StreamPayload) DispatcherPayload.parseJSON(json);
+        assertEquals("device-1", parsed.getDeviceId());
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+
+        StreamPayload payload = new StreamPayload(stream, Operation.push, record);
+        assertTrue(!mapper.readTree(payload.toBytes()).has("records"));
+
+        RecordSet last = new RecordSet(stream).channel("ratio", 12.5);
+        StreamPayload batch = payload.batch(Arrays.asList(record, last));
+
+        JsonNode json = mapper.readTree(batch.toBytes());
+        assertEquals(2, json.get("records").size());
+        assertEquals(12.5, json.get("record").get("channels").get("ratio").asDouble(), 0);
+        assertTrue(json.hasNonNull("device"));
+
+        StreamPayload parsed = (StreamPayload) DispatcherPayload.parse(batch.toBytes());
+        assertEquals(2, parsed.records.size());
+    }
+
+}
@@ -17,6 +17,10 @@ package org.createnet.raptor.models.query;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.createnet.raptor.models.objects.RaptorComponent;
+import org.createnet.raptor.models.objects.Stream;
 import org.createnet.raptor.utils.TestUtils;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -62,4 +66,50 @@ public class DataQueryParserTest extends TestUtils {
 //        Assert.assertEquals(json.get("name").get("equals").asText(), q.name.getEquals());
     }
 
+    @Test
+    public void parseAggregate() throws IOException {
+
+        DataQuery query = new DataQuery();
+        query.aggregate().interval(60000).byDevice(true)
+                .channel("ratio", "avg", "max", "p95")
+                .channel("happy", "count", "last");
+
+        DataQuery q = mapper.readValue(query.toJSON().toString(), DataQuery.class);
+
+        Assert.assertNotNull(q.getAggregate());
+        Assert.assertEquals(60000, q.getAggregate().getInterval());
+        Assert.assertTrue(q.getAggregate().isByDevice());
+        Assert.assertEquals(Arrays.asList("avg", "max", "p95"), q.getAggregate().getChannels().get("ratio"));
+        Assert.assertEquals(Arrays.asList("ratio", "happy"), new ArrayList(q.getAggregate().getChannels().keySet()));
+    }
+
+    @Test
+    public void validateAggregate() throws IOException {
+
+        loadObject();
+        device.parse(jsonDevice);
+        Stream stream = device.stream(defaultStreamName);
+
+        new AggregateQuery().channel("ratio", "min", "sum", "p99.9").validate(stream);
+        new AggregateQuery().channel("name", "count", "first").validate(stream);
+
+        assertInvalid(new AggregateQuery(), stream);
+        assertInvalid(new AggregateQuery().channel("ratio", "median"), stream);
+        assertInvalid(new AggregateQuery().channel("ratio", "p0"), stream);
+        assertInvalid(new AggregateQuery().channel("name", "avg"), stream);
+        assertInvalid(new AggregateQuery().channel("missing", "count"), stream);
+        assertInvalid(new AggregateQuery().interval(-1).channel("ratio", "avg"), stream);
+
+        Assert.assertEquals(3, new AggregateQuery().interval(1000).buckets(500, 2500));
+        Assert.assertEquals(1, new AggregateQuery().buckets(500, 2500));
+    }
+
+    protected void assertInvalid(AggregateQuery query, Stream stream) {
+        try {
+            query.validate(stream);
+            Assert.fail("Expected invalid aggregation " + query.getChannels());
+        } catch (RaptorComponent.ValidationException ex) {
+        }
+    }
+
 }
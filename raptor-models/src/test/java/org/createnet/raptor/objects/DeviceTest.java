@@ -88,6 +88,20 @@ public class DeviceTest extends TestUtils {
      * @throws
      * org.createnet.raptor.models.objects.RaptorComponent.ParserException
      */
+    @Test
+    public void testVersion() {
+
+        device.parse(jsonDevice.toString());
+        device.nextVersion();
+        long version = device.getVersion();
+
+        device.nextVersion();
+        assertTrue(device.getVersion() > version);
+
+        Device dev = Device.fromJSON(device.toJSON());
+        assertEquals(device.getVersion(), dev.getVersion());
+    }
+
     @Test
     public void testParse2() {
         
@@ -22,9 +22,19 @@ import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.ObjectMapper;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.http.options.Option;
+import com.mashape.unirest.http.options.Options;
 import com.mashape.unirest.request.HttpRequest;
 import com.mashape.unirest.request.HttpRequestWithBody;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.createnet.raptor.sdk.exception.ClientException;
 import org.createnet.raptor.sdk.exception.MissingAuthenticationException;
 import org.createnet.raptor.models.exception.RequestException;
@@ -197,6 +207,64 @@ public class HttpClient extends AbstractClient {
         throw new ClientException("Request failed");
     }
 
+    /**
+     * Perform a request to the API and return the response body as it is
+     * received, without buffering it in memory. Closing the stream before the
+     * end aborts the request.
+     *
+     * @param httpMethod
+     * @param url path of request
+     * @param body content to be sent, may be null
+     * @param accept the accepted content type
+     * @return the response body, to be closed by the caller
+     */
+    public InputStream stream(HttpMethod httpMethod, String url, JsonNode body, String accept) {
+
+        url = url(url);
+        logger.debug("{} {} (streaming)", httpMethod.name(), url);
+
+        RequestBuilder req = RequestBuilder.create(httpMethod.name())
+                .setUri(url)
+                .setHeader("Authorization", getToken())
+                .setHeader("Accept", accept);
+
+        if (body != null) {
+            req.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        }
+
+        CloseableHttpClient client = (CloseableHttpClient) Options.getOption(Option.HTTPCLIENT);
+
+        try {
+
+            CloseableHttpResponse response = client.execute(req.build());
+
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 400) {
+                String message = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+                response.close();
+                logger.error("Request failed {} {}: {}", status, response.getStatusLine().getReasonPhrase(), message);
+                throw new RequestException(status, response.getStatusLine().getReasonPhrase(), message);
+            }
+
+            if (response.getEntity() == null) {
+                response.close();
+                throw new ClientException("Empty response");
+            }
+
+            return new FilterInputStream(response.getEntity().getContent()) {
+                @Override
+                public void close() throws IOException {
+                    // release the connection without reading the remaining content
+                    response.close();
+                }
+            };
+
+        } catch (IOException ex) {
+            logger.error("HTTP Client error: {}", ex.getMessage());
+            throw new ClientException(ex);
+        }
+    }
+
     /**
      * Perform a request with body to the API
      *
@@ -18,7 +18,10 @@ package org.createnet.raptor.sdk;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -46,6 +49,11 @@ public class PageResponse<T> extends PageImpl<T> {
     @JsonIgnore
     protected Sort sort;
 
+    protected String continuation;
+
+    @JsonIgnore
+    protected Function<String, PageResponse<T>> fetcher;
+
     public PageResponse(List<T> content, Pageable pageable, long total) {
         super(content, pageable, total);
     }
@@ -159,4 +167,83 @@ public class PageResponse<T> extends PageImpl<T> {
         this.sort = sort;
     }
 
+    /**
+     * The token to request the next page of a keyset paginated result, null if
+     * this is the last page
+     *
+     * @return
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    /**
+     * Set the function loading the page of a continuation token
+     *
+     * @param fetcher
+     */
+    public void setFetcher(Function<String, PageResponse<T>> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    public boolean hasContinuation() {
+        return continuation != null && fetcher != null;
+    }
+
+    /**
+     * Load the next page following the continuation token
+     *
+     * @return the next page or null if this is the last one
+     */
+    public PageResponse<T> fetchNext() {
+        if (!hasContinuation()) {
+            return null;
+        }
+        return fetcher.apply(continuation);
+    }
+
+    /**
+     * Iterate the content of this page and of the following ones, loading them
+     * as needed when a continuation token is available
+     *
+     * @return
+     */
+    @Override
+    public Iterator<T> iterator() {
+
+        if (!hasContinuation()) {
+            return getContent().iterator();
+        }
+
+        return new Iterator<T>() {
+
+            private PageResponse<T> page = PageResponse.this;
+            private Iterator<T> items = page.getContent().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!items.hasNext()) {
+                    if (!page.hasContinuation()) {
+                        return false;
+                    }
+                    page = page.fetchNext();
+                    items = page.getContent().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return items.next();
+            }
+        };
+    }
+
 }
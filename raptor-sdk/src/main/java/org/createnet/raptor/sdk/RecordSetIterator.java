@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.sdk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.sdk.exception.ClientException;
+
+/**
+ * Iterate the records of a streamed response as they are received, either
+ * newline delimited or as a JSON array. The response is closed once all the
+ * records are read, or by calling close() to stop earlier.
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+public class RecordSetIterator implements Iterator<RecordSet>, Closeable {
+
+    final private Stream stream;
+    final private InputStream input;
+    final private MappingIterator<JsonNode> rows;
+
+    public RecordSetIterator(Stream stream, InputStream input) {
+        this.stream = stream;
+        this.input = input;
+        try {
+            this.rows = Device.getMapper().readerFor(JsonNode.class).readValues(input);
+        } catch (IOException ex) {
+            closeQuietly();
+            throw new ClientException(ex);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (rows.hasNextValue()) {
+                return true;
+            }
+        } catch (IOException ex) {
+            closeQuietly();
+            throw new ClientException(ex);
+        }
+        closeQuietly();
+        return false;
+    }
+
+    @Override
+    public RecordSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return new RecordSet(stream, rows.next());
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    protected void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ex) {
+        }
+    }
+
+}
@@ -29,10 +29,14 @@ final public class Routes {
     
     public static final String STREAM_GET = "/stream/%s/%s";
     public static final String STREAM_PUSH = STREAM_GET;
+    public static final String STREAM_PUSH_BATCH = STREAM_PUSH + "/batch";
+    public static final String STREAM_PUSH_DEVICE = "/stream/%s";
     
     public static final String STREAM_LAST_UPDATE = STREAM_PUSH + "/lastUpdate";
     public static final String STREAM_PULL = STREAM_PUSH;
     public static final String STREAM_SEARCH = STREAM_PUSH;
+    public static final String STREAM_AGGREGATE = STREAM_GET + "/aggregate";
+    public static final String STREAM_AGGREGATE_DEVICES = "/stream/aggregate/%s";
     
     public static final String ACTION_INVOKE = "/action/%s/%s";
     public static final String ACTION_STATUS = ACTION_INVOKE;
@@ -82,7 +86,9 @@ final public class Routes {
     public static final String TREE_CHILDREN = TREE_GET + "/children";
     public static final String TREE_ADD = TREE_CHILDREN;
     public static final String TREE_REMOVE = TREE_GET;
-    public static final String TREE_REMOVE_TREE = TREE_GET + "tree";
+    public static final String TREE_REMOVE_TREE = TREE_GET + "/tree";
+    public static final String TREE_IMPORT = TREE_LIST + "import";
+    public static final String TREE_MOVE = TREE_GET + "/move";
     
     public static final String APP_CREATE = "/app";
     public static final String APP_LIST = APP_CREATE;
@@ -15,12 +15,22 @@
  */
 package org.createnet.raptor.sdk;
 
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import org.createnet.raptor.models.acl.EntityType;
 
 /**
  * List of topics for Raptor API
+ *
+ * The builder methods avoid String.format on the publishing path. Device,
+ * stream and action topics are interned per device so repeated events reuse
+ * the same strings. Past MAX_DEVICES the least recently used devices are
+ * dropped.
  */
 final public class Topics {
+    
     public static final String ACTION = EntityType.action.name() + "/%s/%s";
     public static final String STREAM = EntityType.stream.name() + "/%s/%s";
     public static final String DEVICE = EntityType.device.name() + "/%s";
@@ -28,4 +38,225 @@ final public class Topics {
     public static final String TOKEN = EntityType.token.name() + "/%s";
     public static final String TREE = EntityType.tree.name() + "/%s/%s";
     public static final String APP = EntityType.app.name() + "/%s";
+    public static final String INGEST = "ingest/%s/%s";
+    public static final String LIFECYCLE = "lifecycle/" + EntityType.device.name() + "/%s";
+    public static final String TREE_INDEX = "tree-index/%s";
+
+    /**
+     * Fields of the ingest message envelope, `{"token": "..", "data": record
+     * or list of records}`
+     */
+    public static final String INGEST_TOKEN = "token";
+    public static final String INGEST_DATA = "data";
+
+    /**
+     * Single level MQTT wildcard
+     */
+    public static final String ANY = "+";
+
+    /**
+     * Max amount of devices whose topics are kept interned
+     */
+    public static final int MAX_DEVICES = 10000;
+
+    final private static String SEP = "/";
+    final private static String ACTION_PREFIX = EntityType.action.name() + SEP;
+    final private static String STREAM_PREFIX = EntityType.stream.name() + SEP;
+    final private static String DEVICE_PREFIX = EntityType.device.name() + SEP;
+    final private static String USER_PREFIX = EntityType.user.name() + SEP;
+    final private static String TOKEN_PREFIX = EntityType.token.name() + SEP;
+    final private static String TREE_PREFIX = EntityType.tree.name() + SEP;
+    final private static String APP_PREFIX = EntityType.app.name() + SEP;
+    final private static String INGEST_PREFIX = "ingest" + SEP;
+    final private static String LIFECYCLE_PREFIX = "lifecycle" + SEP + DEVICE_PREFIX;
+    final private static String TREE_INDEX_PREFIX = "tree-index" + SEP;
+
+    final private static ConcurrentHashMap<String, DeviceTopics> devices = new ConcurrentHashMap();
+
+    // advanced on every new device, orders the devices by last use (racy
+    // increments only blur the order)
+    private static volatile long clock = 0;
+
+    /**
+     * Interned topics of a device
+     */
+    public static class DeviceTopics {
+
+        final private String device;
+        final private String lifecycle;
+        final private String streamPrefix;
+        final private String actionPrefix;
+
+        final private ConcurrentHashMap<String, String> streams = new ConcurrentHashMap();
+        final private ConcurrentHashMap<String, String> actions = new ConcurrentHashMap();
+
+        private volatile long used;
+
+        protected DeviceTopics(String deviceId) {
+            this.device = DEVICE_PREFIX + deviceId;
+            this.lifecycle = LIFECYCLE_PREFIX + deviceId;
+            this.streamPrefix = STREAM_PREFIX + deviceId + SEP;
+            this.actionPrefix = ACTION_PREFIX + deviceId + SEP;
+        }
+
+        public String device() {
+            return device;
+        }
+
+        public String lifecycle() {
+            return lifecycle;
+        }
+
+        public String stream(String name) {
+            return intern(streams, streamPrefix, name);
+        }
+
+        public String action(String name) {
+            return intern(actions, actionPrefix, name);
+        }
+
+        private static String intern(ConcurrentHashMap<String, String> topics, String prefix, String name) {
+            String topic = topics.get(name);
+            if (topic == null) {
+                topic = prefix + name;
+                String prev = topics.putIfAbsent(name, topic);
+                if (prev != null) {
+                    topic = prev;
+                }
+            }
+            return topic;
+        }
+
+    }
+
+    private Topics() {
+    }
+
+    /**
+     * Return the interned topics of a device
+     *
+     * @param deviceId
+     * @return
+     */
+    public static DeviceTopics of(String deviceId) {
+        DeviceTopics topics = devices.get(deviceId);
+        if (topics == null) {
+            topics = new DeviceTopics(deviceId);
+            DeviceTopics prev = devices.putIfAbsent(deviceId, topics);
+            if (prev != null) {
+                topics = prev;
+            } else {
+                clock++;
+                if (devices.size() > MAX_DEVICES) {
+                    evict();
+                }
+            }
+        }
+        topics.used = clock;
+        return topics;
+    }
+
+    /**
+     * Drop the least recently used tenth of the devices
+     */
+    private static synchronized void evict() {
+
+        int size = devices.size();
+        if (size <= MAX_DEVICES) {
+            return;
+        }
+
+        int count = size - MAX_DEVICES + MAX_DEVICES / 10;
+        devices.entrySet().stream()
+                .sorted(Comparator.comparingLong((e) -> e.getValue().used))
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())
+                .forEach(devices::remove);
+    }
+
+    /**
+     * Drop the interned topics of a device
+     *
+     * @param deviceId
+     */
+    public static void forget(String deviceId) {
+        devices.remove(deviceId);
+    }
+
+    public static String device(String deviceId) {
+        return of(deviceId).device();
+    }
+
+    /**
+     * Return the topic carrying only the create, update and delete events of
+     * a device, without its data and actions
+     *
+     * @param deviceId
+     * @return
+     */
+    public static String lifecycle(String deviceId) {
+        return of(deviceId).lifecycle();
+    }
+
+    public static String stream(String deviceId, String name) {
+        return of(deviceId).stream(name);
+    }
+
+    public static String action(String deviceId, String name) {
+        return of(deviceId).action(name);
+    }
+
+    public static String user(String userId) {
+        return USER_PREFIX + userId;
+    }
+
+    public static String token(String tokenId) {
+        return TOKEN_PREFIX + tokenId;
+    }
+
+    public static String app(String appId) {
+        return APP_PREFIX + appId;
+    }
+
+    public static String tree(String nodeId, String type) {
+        return TREE_PREFIX + nodeId + SEP + type;
+    }
+
+    /**
+     * Return the topic where an instance broadcasts the structural changes
+     * of the tree
+     *
+     * @param instanceId
+     * @return
+     */
+    public static String treeIndex(String instanceId) {
+        return TREE_INDEX_PREFIX + instanceId;
+    }
+
+    /**
+     * Return the topic where devices publish stream data
+     *
+     * @param deviceId
+     * @param streamId
+     * @return
+     */
+    public static String ingest(String deviceId, String streamId) {
+        return INGEST_PREFIX + deviceId + SEP + streamId;
+    }
+
+    /**
+     * Return the shared subscription form of a topic
+     *
+     * @param group shared group, if empty the topic is returned as is
+     * @param topic
+     * @return
+     */
+    public static String shared(String group, String topic) {
+        if (group == null || group.isEmpty()) {
+            return topic;
+        }
+        return "$share" + SEP + group + SEP + topic;
+    }
+
 }
@@ -18,16 +18,32 @@ package org.createnet.raptor.sdk.api;
 import org.createnet.raptor.sdk.Routes;
 import org.createnet.raptor.sdk.AbstractClient;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mashape.unirest.http.HttpMethod;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.createnet.raptor.sdk.Raptor;
 import org.createnet.raptor.sdk.events.callback.DataCallback;
 import org.createnet.raptor.sdk.events.callback.StreamEventCallback;
+import org.createnet.raptor.models.data.AggregateResult;
 import org.createnet.raptor.models.data.RecordSet;
 import org.createnet.raptor.models.data.ResultSet;
 import org.createnet.raptor.models.objects.Stream;
 import org.createnet.raptor.models.payload.DispatcherPayload;
 import org.createnet.raptor.models.payload.StreamPayload;
 import org.createnet.raptor.models.query.DataQuery;
+import org.createnet.raptor.models.response.BatchResponse;
+import org.createnet.raptor.sdk.PageResponse;
+import org.createnet.raptor.sdk.RecordSetIterator;
 import org.createnet.raptor.sdk.RequestOptions;
+import org.createnet.raptor.sdk.Topics;
 import org.createnet.raptor.sdk.events.callback.RaptorCallback;
 import org.createnet.raptor.sdk.events.callback.StreamCallback;
 
@@ -38,10 +54,43 @@ import org.createnet.raptor.sdk.events.callback.StreamCallback;
  */
 public class StreamClient extends AbstractClient {
 
+    /**
+     * Default amount of records sent per request by pushBatch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Content type of streamed results, one record per line
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+
     public StreamClient(Raptor container) {
         super(container);
     }
 
+    /**
+     * Return the amount of records sent per request by pushBatch
+     *
+     * @return
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the amount of records sent per request by pushBatch
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than zero");
+        }
+        this.batchSize = batchSize;
+    }
+
     /**
      * Subscribe to a data stream
      *
@@ -109,6 +158,104 @@ public class StreamClient extends AbstractClient {
         getClient().put(String.format(Routes.STREAM_PUSH, deviceId, streamId), data.toJsonNode());
     }
 
+    /**
+     * Send stream data over MQTT, on the ingest topic of the stream. The
+     * record is wrapped with the current token, which must have push
+     * permission on the device. The record is stored asynchronously and errors
+     * are not reported back
+     *
+     * @param s the stream
+     * @param record the record to send
+     */
+    public void publish(Stream s, RecordSet record) {
+        ObjectNode envelope = getMapper().createObjectNode();
+        envelope.put(Topics.INGEST_TOKEN, getContainer().Auth().getToken());
+        envelope.set(Topics.INGEST_DATA, record.toJsonNode());
+        byte[] payload = envelope.toString().getBytes(StandardCharsets.UTF_8);
+        getEmitter().getMqttClientHandler().publish(Topics.ingest(s.getDevice().id(), s.name()), payload, 1);
+    }
+
+    /**
+     * Send a list of records of a stream. Large lists are split in multiple
+     * requests of batchSize records
+     *
+     * @param stream the stream the records belong to
+     * @param records the records to send
+     * @return the rejected records, by position in the list
+     */
+    public BatchResponse pushBatch(Stream stream, List<RecordSet> records) {
+        return pushChunks(String.format(Routes.STREAM_PUSH_BATCH, stream.getDevice().id(), stream.name()), records);
+    }
+
+    /**
+     * Send a list of records of one or more streams of a device. Each record
+     * must be bound to a stream. Large lists are split in multiple requests of
+     * batchSize records
+     *
+     * @param deviceId id of the device
+     * @param records the records to send
+     * @return the rejected records, by position in the list
+     */
+    public BatchResponse pushBatch(String deviceId, List<RecordSet> records) {
+        return pushChunks(String.format(Routes.STREAM_PUSH_DEVICE, deviceId), records);
+    }
+
+    /**
+     * Send a list of records, grouping them by device. Each record must be
+     * bound to a stream.
+     *
+     * @param records the records to send
+     * @return the rejected records, by position in the list
+     */
+    public BatchResponse pushBatch(List<RecordSet> records) {
+
+        Map<String, List<Integer>> devices = new LinkedHashMap();
+        for (int i = 0; i < records.size(); i++) {
+            RecordSet record = records.get(i);
+            if (record.getStream() == null || record.getStream().getDevice() == null) {
+                throw new IllegalArgumentException("Record at position " + i + " is not bound to a stream");
+            }
+            devices.computeIfAbsent(record.getStream().getDevice().id(), (id) -> new ArrayList()).add(i);
+        }
+
+        BatchResponse response = new BatchResponse(records.size());
+        devices.forEach((deviceId, positions) -> {
+            List<RecordSet> list = positions.stream().map((i) -> records.get(i)).collect(Collectors.toList());
+            BatchResponse partial = pushBatch(deviceId, list);
+            partial.getErrors().forEach((e) -> response.error(positions.get(e.getIndex()), e.getMessage()));
+        });
+
+        response.getErrors().sort(Comparator.comparingInt(BatchResponse.ItemError::getIndex));
+        return response;
+    }
+
+    /**
+     * Send records in chunks of batchSize
+     *
+     * @param url the batch endpoint
+     * @param records the records to send
+     * @return the merged response
+     */
+    protected BatchResponse pushChunks(String url, List<RecordSet> records) {
+
+        BatchResponse response = new BatchResponse(records.size());
+
+        for (int offset = 0; offset < records.size(); offset += batchSize) {
+
+            List<RecordSet> chunk = records.subList(offset, Math.min(offset + batchSize, records.size()));
+
+            ArrayNode body = getMapper().createArrayNode();
+            chunk.forEach((record) -> body.add(record.toJsonNode()));
+
+            JsonNode json = getClient().put(url, body);
+            if (json != null) {
+                response.merge(getMapper().convertValue(json, BatchResponse.class), offset);
+            }
+        }
+
+        return response;
+    }
+
     /**
      * Retrieve data from a stream
      *
@@ -187,6 +334,157 @@ public class StreamClient extends AbstractClient {
         return ResultSet.fromJSON(stream, results);
     }
 
+    /**
+     * Aggregate the data of the stream, the query must set the aggregate
+     * operators
+     *
+     * @param stream the stream to aggregate
+     * @param query the search query
+     * @return
+     */
+    public AggregateResult aggregate(Stream stream, DataQuery query) {
+        JsonNode result = getClient().post(
+                String.format(Routes.STREAM_AGGREGATE, stream.getDevice().id(), stream.name()),
+                query.toJSON(),
+                RequestOptions.retriable().maxRetries(3).waitFor(500)
+        );
+        return getMapper().convertValue(result, AggregateResult.class);
+    }
+
+    /**
+     * Aggregate the data of a stream across the devices of the user
+     *
+     * @param streamId the stream name
+     * @param query the search query
+     * @return
+     */
+    public AggregateResult aggregate(String streamId, DataQuery query) {
+        JsonNode result = getClient().post(
+                String.format(Routes.STREAM_AGGREGATE_DEVICES, streamId),
+                query.toJSON(),
+                RequestOptions.retriable().maxRetries(3).waitFor(500)
+        );
+        return getMapper().convertValue(result, AggregateResult.class);
+    }
+
+    /**
+     * Search for data in the stream with keyset pagination. Iterating the
+     * returned page transparently loads the following ones.
+     *
+     * @param stream the stream to search in
+     * @param query the search query, its limit is the page size
+     * @return
+     */
+    public PageResponse<RecordSet> searchPage(Stream stream, DataQuery query) {
+        return searchPage(stream, query, null);
+    }
+
+    /**
+     * Search for data in the stream with keyset pagination, starting after a
+     * continuation token
+     *
+     * @param stream the stream to search in
+     * @param query the search query, its limit is the page size
+     * @param continuation the token of a previous page, or null
+     * @return
+     */
+    public PageResponse<RecordSet> searchPage(Stream stream, DataQuery query, String continuation) {
+        JsonNode result = getClient().post(
+                String.format(Routes.STREAM_SEARCH, stream.getDevice().id(), stream.name()) + keysetQueryString(continuation, null),
+                query.toJSON(),
+                RequestOptions.retriable().maxRetries(3).waitFor(500)
+        );
+        return toPage(stream, result, (token) -> searchPage(stream, query, token));
+    }
+
+    /**
+     * Retrieve data from a stream with keyset pagination. Iterating the
+     * returned page transparently loads the following ones.
+     *
+     * @param stream the stream to read from
+     * @param size the page size
+     * @return
+     */
+    public PageResponse<RecordSet> pullPage(Stream stream, Integer size) {
+        return pullPage(stream, null, size);
+    }
+
+    /**
+     * Retrieve data from a stream with keyset pagination, starting after a
+     * continuation token
+     *
+     * @param stream the stream to read from
+     * @param continuation the token of a previous page, or null
+     * @param size the page size
+     * @return
+     */
+    public PageResponse<RecordSet> pullPage(Stream stream, String continuation, Integer size) {
+        JsonNode result = getClient().get(String.format(Routes.STREAM_PULL, stream.getDevice().id(), stream.name()) + keysetQueryString(continuation, size));
+        return toPage(stream, result, (token) -> pullPage(stream, token, size));
+    }
+
+    protected String keysetQueryString(String continuation, Integer size) {
+        String qs = "?keyset=true";
+        if (continuation != null) {
+            qs += "&continuation=" + continuation;
+        }
+        if (size != null) {
+            qs += "&size=" + size;
+        }
+        return qs;
+    }
+
+    protected PageResponse<RecordSet> toPage(Stream stream, JsonNode result, Function<String, PageResponse<RecordSet>> fetcher) {
+
+        List<RecordSet> records = new ArrayList();
+        result.path("content").forEach((row) -> records.add(new RecordSet(stream, row)));
+
+        PageResponse<RecordSet> page = new PageResponse();
+        page.setContent(records);
+        page.setSize(result.path("size").asInt());
+        page.setNumberOfElements(records.size());
+        page.setContinuation(result.hasNonNull("continuation") ? result.get("continuation").asText() : null);
+        page.setLast(page.getContinuation() == null);
+        page.setFetcher(fetcher);
+
+        return page;
+    }
+
+    /**
+     * Search for data in the stream, reading the results as they are received
+     * from the server instead of loading them all in memory. The iterator must
+     * be closed if not fully consumed.
+     *
+     * @param stream the stream to search in
+     * @param query the search query
+     * @return
+     */
+    public RecordSetIterator searchIterator(Stream stream, DataQuery query) {
+        return new RecordSetIterator(stream, getClient().stream(
+                HttpMethod.POST,
+                String.format(Routes.STREAM_SEARCH, stream.getDevice().id(), stream.name()),
+                query.toJSON(),
+                NDJSON
+        ));
+    }
+
+    /**
+     * Retrieve all the data of a stream, reading the records as they are
+     * received from the server instead of loading them all in memory. The
+     * iterator must be closed if not fully consumed.
+     *
+     * @param stream the stream to read from
+     * @return
+     */
+    public RecordSetIterator pullIterator(Stream stream) {
+        return new RecordSetIterator(stream, getClient().stream(
+                HttpMethod.GET,
+                String.format(Routes.STREAM_PULL, stream.getDevice().id(), stream.name()),
+                null,
+                NDJSON
+        ));
+    }
+
     /**
      * Drop all data stored in a stream
      *
@@ -259,4 +259,33 @@ public class TreeClient extends AbstractClient {
         getClient().delete(url);
     }
 
+    /**
+     * Import one or more trees with their nested children in a single request
+     *
+     * @param roots
+     * @return the imported trees
+     */
+    public List<TreeNode> importTree(List<TreeNode> roots) {
+        JsonNode json = getClient().post(Routes.TREE_IMPORT, toJsonNode(roots));
+        List<TreeNode> list = Device.getMapper().convertValue(json, new TypeReference<List<TreeNode>>() {
+        });
+        return list;
+    }
+
+    /**
+     * Move nodes with their subtree below a node
+     *
+     * @param parent
+     * @param nodes
+     * @return the moved nodes
+     */
+    public List<TreeNode> move(TreeNode parent, List<TreeNode> nodes) {
+        String url = String.format(Routes.TREE_MOVE, parent.getId());
+        List<String> ids = nodes.stream().map(TreeNode::getId).collect(Collectors.toList());
+        JsonNode json = getClient().put(url, toJsonNode(ids));
+        List<TreeNode> list = Device.getMapper().convertValue(json, new TypeReference<List<TreeNode>>() {
+        });
+        return list;
+    }
+
 }
@@ -23,6 +23,7 @@ public interface MessageEventListener {
   
   public class Message {
     public String content;
+    public byte[] payload;
     public String topic;
   }
   
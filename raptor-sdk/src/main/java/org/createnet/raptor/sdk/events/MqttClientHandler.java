@@ -134,6 +134,21 @@ public class MqttClientHandler extends AbstractClient {
         }
     }
 
+    /**
+     * Publish a message to an MQTT topic
+     *
+     * @param topic the destination topic
+     * @param payload the message content
+     * @param qos the quality of service
+     */
+    public void publish(String topic, byte[] payload, int qos) {
+        try {
+            getMqttClient().publish(topic, payload, qos, false);
+        } catch (MqttException ex) {
+            throw new ClientException(ex);
+        }
+    }
+
     /**
      * Set the callback to trigger on message arrival
      *
@@ -163,7 +178,8 @@ public class MqttClientHandler extends AbstractClient {
 
                 MessageEventListener.Message message = new MessageEventListener.Message();
                 message.topic = mqttTopic;
-                message.content = new String(mqttMessage.getPayload());
+                message.payload = mqttMessage.getPayload();
+                message.content = new String(message.payload);
 
                 logger.debug("New message received on {}", message.topic, message.content);
                 listener.onMessage(message);
@@ -72,32 +72,32 @@ public class MqttEventEmitter extends AbstractClient {
     }
 
     protected String getDeviceTopic(Device obj) {
-        return String.format(Topics.DEVICE, obj.getId());
+        return Topics.device(obj.getId());
     }
     
     protected String getAppTopic(App obj) {
-        return String.format(Topics.APP, obj.getId());
+        return Topics.app(obj.getId());
     }
 
     protected String getUserTopic(User obj) {
-        return String.format(Topics.USER, obj.getId());
+        return Topics.user(obj.getId());
     }
 
     protected String getTokenTopic(Token obj) {
-        return String.format(Topics.TOKEN, obj.getId().toString());
+        return Topics.token(obj.getId().toString());
     }
 
     protected String getGroupTopic(TreeNode n) {
-        return String.format(Topics.TREE, n.getId(), n.getType().name());
+        return Topics.tree(n.getId(), n.getType().name());
     }
 
     protected String getStreamTopic(Stream stream) {
-        String path = String.format(Topics.STREAM, stream.getDevice().getId(), stream.name());
+        String path = Topics.stream(stream.getDevice().getId(), stream.name());
         return path;
     }
 
     protected String getActionTopic(Action action) {
-        String path = String.format(Topics.ACTION, action.getDevice().getId(), action.name());
+        String path = Topics.action(action.getDevice().getId(), action.name());
         return path;
     }
 
@@ -245,7 +245,7 @@ public class MqttEventEmitter extends AbstractClient {
             mqttEventListener = new MessageEventListener() {
                 @Override
                 public void onMessage(MessageEventListener.Message message) {
-                    DispatcherPayload payload = DispatcherPayload.parseJSON(message.content);
+                    DispatcherPayload payload = DispatcherPayload.parse(message.payload);
                     if (subscriptions.containsKey(message.topic)) {
                         subscriptions.get(message.topic).parallelStream().forEach(ev -> {
                             ev.trigger(payload);
@@ -15,18 +15,23 @@
  */
 package org.createnet.raptor.sdk.api;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import org.createnet.raptor.models.data.AggregateResult;
 import org.createnet.raptor.models.data.RecordSet;
 import org.createnet.raptor.models.data.ResultSet;
 import org.createnet.raptor.models.objects.Device;
 import org.createnet.raptor.models.objects.Stream;
 import org.createnet.raptor.models.query.DataQuery;
+import org.createnet.raptor.models.response.BatchResponse;
+import org.createnet.raptor.sdk.PageResponse;
 import org.createnet.raptor.sdk.Raptor;
+import org.createnet.raptor.sdk.RecordSetIterator;
 import org.createnet.raptor.sdk.Utils;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -130,6 +135,52 @@ public class DataStreamTest {
 		pushRecords(raptor, s, 1);
 	}
 
+	@Test
+	public void pushBatch() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Push device data in batch");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		int qt = 25;
+		List<RecordSet> records = createRecordSet(s, qt);
+		records.add(new RecordSet(s).channel("unknown", 1));
+
+		raptor.Stream().setBatchSize(10);
+		BatchResponse response = raptor.Stream().pushBatch(s, records);
+
+		Assert.assertEquals(qt + 1, response.getTotal());
+		Assert.assertEquals(qt, response.getAccepted());
+		Assert.assertEquals(1, response.getErrors().size());
+		Assert.assertEquals(qt, response.getErrors().get(0).getIndex());
+
+		ResultSet results = raptor.Stream().pull(s);
+		Assert.assertEquals(qt, results.size());
+	}
+
+	@Test
+	public void pushDeviceBatch() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Push data of multiple streams in batch");
+
+		device.addStream("other", "number", "number");
+		Device dev = createDevice(raptor);
+
+		List<RecordSet> records = createRecordSet(dev.stream("test"), 5);
+		records.add(new RecordSet(dev.stream("other")).channel("number", 1));
+
+		BatchResponse response = raptor.Stream().pushBatch(records);
+
+		Assert.assertFalse(response.hasErrors());
+		Assert.assertEquals(5, raptor.Stream().pull(dev.stream("test")).size());
+		Assert.assertEquals(1, raptor.Stream().pull(dev.stream("other")).size());
+	}
+
 	@Test
 	public void dropData() {
 
@@ -167,6 +218,54 @@ public class DataStreamTest {
 		Assert.assertEquals(qt, results.size());
 	}
 
+	@Test
+	public void pullIterator() throws Exception {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Pull device data as a stream");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		int qt = 5;
+		pushRecords(raptor, s, qt);
+
+		int count = 0;
+		try (RecordSetIterator records = raptor.Stream().pullIterator(s)) {
+			while (records.hasNext()) {
+				RecordSet record = records.next();
+				Assert.assertEquals(s.name(), record.getStreamId());
+				count++;
+			}
+		}
+		Assert.assertEquals(qt, count);
+	}
+
+	@Test
+	public void pullPages() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Pull device data by keyset pages");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		int qt = 5;
+		pushRecords(raptor, s, qt);
+
+		PageResponse<RecordSet> page = raptor.Stream().pullPage(s, 2);
+		Assert.assertEquals(2, page.getContent().size());
+		Assert.assertNotNull(page.getContinuation());
+
+		int count = 0;
+		for (RecordSet record : page) {
+			count++;
+		}
+		Assert.assertEquals(qt, count);
+	}
+
 	@Test
 	public void pullLastUpdate() {
 
@@ -212,6 +311,45 @@ public class DataStreamTest {
 		Assert.assertNull(record);
 	}
 
+	@Test
+	public void publishData() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Publish device data over MQTT");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		RecordSet r = new RecordSet(s).channel("number", 42).channel("string", "Published").channel("boolean", true);
+		raptor.Stream().publish(s, r);
+
+		Utils.waitUntil(10, () -> raptor.Stream().lastUpdate(s) == null);
+
+		RecordSet record = raptor.Stream().lastUpdate(s);
+		Assert.assertEquals(42L, record.value("number").getNumber().longValue());
+		Assert.assertEquals("Published", record.value("string").getString());
+	}
+
+	@Test
+	public void publishDataUnauthorized() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+		Raptor other = Utils.createNewUserInstance();
+
+		log.debug("Publish data to a device of another user");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		RecordSet r = new RecordSet(s).channel("number", 1).channel("string", "Denied").channel("boolean", false);
+		other.Stream().publish(s, r);
+
+		Utils.waitFor(2500);
+
+		Assert.assertNull(raptor.Stream().lastUpdate(s));
+	}
+
 	@Test
 	public void searchByTimeRange() {
 
@@ -244,6 +382,38 @@ public class DataStreamTest {
 		Assert.assertEquals(2, results.size());
 	}
 
+	@Test
+	public void aggregateByTimeRange() {
+
+		Raptor raptor = Utils.createNewAdminInstance();
+
+		log.debug("Aggregate by time range");
+
+		Device dev = createDevice(raptor);
+		Stream s = dev.stream("test");
+
+		Instant i = Instant.ofEpochMilli(Instant.now().toEpochMilli() / 10000 * 10000);
+		for (int n = 0; n < 4; n++) {
+			raptor.Stream().push(new RecordSet(s).channel("number", n + 1).timestamp(i.plus(n * 4, ChronoUnit.SECONDS)));
+		}
+
+		DataQuery q = new DataQuery().timeRange(i.minus(1, ChronoUnit.SECONDS), i.plus(20, ChronoUnit.SECONDS));
+		q.aggregate().interval(Duration.ofSeconds(10)).channel("number", "count", "avg", "max", "p50");
+
+		AggregateResult result = raptor.Stream().aggregate(s, q);
+		log.debug("Aggregate \n" + raptor.Stream().toJsonNode(result));
+
+		Assert.assertEquals(1, result.getSeries().size());
+
+		AggregateResult.Series series = result.getSeries().get(0);
+		Assert.assertEquals(2, series.getTimestamps().size());
+		Assert.assertEquals(i.toEpochMilli(), series.getTimestamps().get(0).longValue());
+		Assert.assertEquals(3, ((Number) series.values("number", "count").get(0)).intValue());
+		Assert.assertEquals(2.0, ((Number) series.values("number", "avg").get(0)).doubleValue(), 0);
+		Assert.assertEquals(4, ((Number) series.values("number", "max").get(1)).intValue());
+		Assert.assertEquals(2.0, ((Number) series.values("number", "p50").get(0)).doubleValue(), 0);
+	}
+
 	@Test
 	public void searchByNumericRange() {
 
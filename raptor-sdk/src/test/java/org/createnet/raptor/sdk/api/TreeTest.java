@@ -23,6 +23,7 @@ import org.createnet.raptor.models.acl.Operation;
 import org.createnet.raptor.models.auth.Permission;
 import org.createnet.raptor.models.auth.Token;
 import org.createnet.raptor.models.data.RecordSet;
+import org.createnet.raptor.models.exception.RequestException;
 import org.createnet.raptor.models.objects.Device;
 import org.createnet.raptor.models.objects.Stream;
 import org.createnet.raptor.models.query.TreeQuery;
@@ -169,6 +170,64 @@ public class TreeTest {
 
     }
 
+    @Test
+    public void importTree() {
+
+        Raptor raptor = Utils.createNewAdminInstance();
+
+        log.debug("import tree");
+
+        TreeNode site = TreeNode.create("site");
+        TreeNode building = TreeNode.create("building");
+        TreeNode floor1 = TreeNode.create("floor1");
+        TreeNode floor2 = TreeNode.create("floor2");
+        site.children().add(building);
+        building.children().addAll(Arrays.asList(floor1, floor2));
+
+        raptor.Tree().importTree(Arrays.asList(site));
+
+        TreeNode tree = raptor.Tree().tree(floor2);
+        assertEquals(site.getId(), tree.getId());
+        assertEquals(1, tree.children().size());
+        assertEquals(2, tree.children().get(0).children().size());
+
+        raptor.Tree().move(site, Arrays.asList(floor2));
+
+        List<TreeNode> children = raptor.Tree().children(site);
+        assertEquals(2, children.size());
+
+        raptor.Tree().removeTree(building);
+
+        tree = raptor.Tree().tree(site);
+        assertEquals(1, tree.children().size());
+        assertEquals(floor2.getId(), tree.children().get(0).getId());
+
+    }
+
+    @Test
+    public void importTreeForeignParent() {
+
+        Raptor raptor = Utils.createNewAdminInstance();
+        Raptor other = Utils.createNewUserInstance();
+
+        log.debug("import tree below a node of another user");
+
+        TreeNode root = TreeNode.create("Root");
+        raptor.Tree().create(root);
+
+        TreeNode node = TreeNode.create("grafted");
+        node.parentId(root.getId());
+
+        try {
+            other.Tree().importTree(Arrays.asList(node));
+            fail("Import below a foreign node should be denied");
+        } catch (RequestException ex) {
+            assertEquals(403, ex.getStatus());
+        }
+
+        assertEquals(0, raptor.Tree().children(root).size());
+    }
+
     @Test
     public void createDeviceNode() {
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.sdk.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.createnet.raptor.models.acl.Operation;
+import org.createnet.raptor.models.objects.Device;
+import org.createnet.raptor.models.objects.RaptorContainer;
+import org.createnet.raptor.models.objects.Stream;
+import org.createnet.raptor.models.payload.DevicePayload;
+import org.createnet.raptor.models.payload.DispatcherPayload;
+import org.createnet.raptor.models.payload.StreamPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare parsing a dispatcher message through an intermediate JsonNode tree
+ * with binding it in one streaming pass. Run with
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.createnet.raptor.sdk.benchmark.DispatcherPayloadBenchmark
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatcherPayloadBenchmark {
+
+    @Param({"stream", "device"})
+    private String type;
+
+    private byte[] encoded;
+
+    public static Device createDevice() {
+        Device device = new Device()
+                .id("0b6bd5a0-5bd1-4b5b-8d2b-5b4c0e3c9d44")
+                .name("environment sensor");
+        device.userId("4f7ae1f2-2a1e-4fdd-9d23-6ab3f4b1c0de");
+        device.addStream("environment")
+                .addChannel("temperature", "number")
+                .addChannel("humidity", "number")
+                .addChannel("pressure", "number")
+                .addChannel("status", "string");
+        device.addStream("location", "position", "geopoint");
+        device.addAction("reboot");
+        device.addAction("calibrate");
+        return device;
+    }
+
+    @Setup
+    public void setup() {
+        Device device = createDevice();
+        DispatcherPayload payload;
+        if ("stream".equals(type)) {
+            Stream stream = device.stream("environment");
+            payload = new StreamPayload(stream, Operation.push, RecordSetFormatBenchmark.createRecord());
+        } else {
+            payload = new DevicePayload(device, Operation.update);
+        }
+        encoded = payload.toBytes();
+    }
+
+    @Benchmark
+    public DispatcherPayload tree() throws IOException {
+        return DispatcherPayload.parseJSON(RaptorContainer.getMapper().readTree(encoded));
+    }
+
+    @Benchmark
+    public DispatcherPayload streaming() {
+        return DispatcherPayload.parse(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DispatcherPayloadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
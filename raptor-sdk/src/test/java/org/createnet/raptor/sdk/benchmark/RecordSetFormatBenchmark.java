@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.sdk.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.createnet.raptor.models.data.DataFormat;
+import org.createnet.raptor.models.data.RecordSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+
+/**
+ * Compare size and (de)serialization throughput of a numeric sensor record
+ * in JSON, CBOR and Smile. Run with
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.createnet.raptor.sdk.benchmark.RecordSetFormatBenchmark
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordSetFormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    private DataFormat format;
+
+    private RecordSet record;
+    private byte[] encoded;
+
+    public static RecordSet createRecord() {
+        RecordSet record = new RecordSet()
+                .channel("temperature", 21.53)
+                .channel("humidity", 48.2)
+                .channel("pressure", 1013.25)
+                .channel("battery", 87)
+                .channel("rssi", -67)
+                .channel("moving", false)
+                .channel("status", "ok");
+        record.location(new GeoJsonPoint(11.1217, 46.0664));
+        record.userId("4f7ae1f2-2a1e-4fdd-9d23-6ab3f4b1c0de");
+        record.deviceId("0b6bd5a0-5bd1-4b5b-8d2b-5b4c0e3c9d44");
+        record.streamId("environment");
+        return record;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        record = createRecord();
+        encoded = format.getMapper().writeValueAsBytes(record);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return format.getMapper().writeValueAsBytes(record);
+    }
+
+    @Benchmark
+    public RecordSet deserialize() throws IOException {
+        return format.getMapper().readValue(encoded, RecordSet.class);
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+
+        RecordSet record = createRecord();
+        for (DataFormat format : DataFormat.values()) {
+            System.out.println(format + ": " + format.getMapper().writeValueAsBytes(record).length + " bytes");
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(RecordSetFormatBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 FBK/CREATE-NET
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.createnet.raptor.sdk.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.createnet.raptor.sdk.Topics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the topic construction with String.format against the Topics
+ * builder. Run with
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.createnet.raptor.sdk.benchmark.TopicsBenchmark
+ *
+ * @author Luca Capra <lcapra@fbk.eu>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicsBenchmark {
+
+    private String deviceId = "0b6bd5a0-5bd1-4b5b-8d2b-5b4c0e3c9d44";
+    private String stream = "mylocation";
+
+    @Benchmark
+    public String format() {
+        return String.format(Topics.STREAM, deviceId, stream);
+    }
+
+    @Benchmark
+    public String concat() {
+        return "stream/" + deviceId + "/" + stream;
+    }
+
+    @Benchmark
+    public String builder() {
+        return Topics.stream(deviceId, stream);
+    }
+
+    @Benchmark
+    public String deviceTopics() {
+        return Topics.of(deviceId).stream(stream);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TopicsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}